@@ -0,0 +1,827 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+// Layout and drawing of the bar chart, kept apart from Swing components so
+// the desktop panel (CustomBarChart) and headless rendering share one
+// layout. A painter is not thread-safe, but it holds no component and
+// registers with nothing, so each thread can render with its own.
+//
+// Everything that does not change between animation frames (background,
+// axes, ticks, title and the rotated axis labels) is drawn once into a
+// cached image. A frame then only blits that image and draws the bars and
+// their value labels from primitive arrays, so painting allocates nothing.
+//
+// The chart shows a window of the categories. When the window holds more
+// categories than there are bar slots across the width, neighbouring
+// categories are binned into one bar showing their maximum, so the number
+// of bars drawn depends on the width only.
+public class BarChartPainter {
+    private static final Font TICK_FONT = new Font("Arial", Font.PLAIN, 12);
+    private static final Font AXIS_FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 16);
+    private static final String[] NO_KEYS = new String[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    // Room above a bar for its value label
+    private static final int VALUE_LABEL_HEIGHT = 20;
+    static final int PADDING = 30;
+    private static final int BOTTOM_PADDING = 60;
+    static final int LEFT_PADDING = 60;
+
+    // Narrowest slot a bar gets before categories are binned together
+    private static final int MIN_SLOT_WIDTH = 16;
+    // Slanted axis labels closer than this are thinned out
+    private static final int MIN_LABEL_SPACING = 18;
+    private static final int MAX_LABEL_LENGTH = 16;
+
+    private String[] keys = NO_KEYS;
+    private double[] values = NO_VALUES;
+    private double maxValue;
+    private String title = "Distribution of Games by Release Year";
+    private String xAxisLabel = "Release Year";
+    private String yAxisLabel = "Number of Games";
+    private Color barColor = new Color(75, 192, 192);
+    private Color backgroundColor = Color.WHITE;
+    private Color textColor = Color.BLACK;
+    // Share of their values the bars are drawn at while growing
+    private double animationFraction = 1;
+
+    // Visible window of categories
+    private int viewStart;
+    private int viewCount;
+
+    // Bar layout for the window, rebuilt only when the size, the data or the
+    // window changes. Column c covers categories columnFirst[c] until
+    // columnFirst[c + 1].
+    private boolean layoutValid;
+    private int layoutWidth;
+    private int layoutHeight;
+    private int plotWidth;
+    private int plotHeight;
+    private int barWidth;
+    private int slotWidth;
+    private int columnCount;
+    private int[] columnX = new int[0];
+    private int[] columnFirst = new int[1];
+    private double[] columnValues = NO_VALUES;
+    private double[] columnHeights = NO_VALUES;
+    private double scaleMax;
+
+    // Pre-rendered static layer; null when it has to be redrawn
+    private BufferedImage staticLayer;
+    private double layerScaleX;
+    private double layerScaleY;
+
+    private FontMetrics tickMetrics;
+    private Graphics2D metricsGraphics;
+    private final char[] labelChars = new char[24];
+    private final GraphicsCanvas screenCanvas = new GraphicsCanvas(null);
+
+    // Metrics used to lay out text. A painter on its own measures with a
+    // scratch image; a component painting through it can use its own.
+    FontMetrics fontMetrics(Font font) {
+        if (metricsGraphics == null) {
+            metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        }
+        return metricsGraphics.getFontMetrics(font);
+    }
+
+    public void setThemeColors(Color backgroundColor, Color textColor) {
+        this.backgroundColor = backgroundColor;
+        this.textColor = textColor;
+        staticLayer = null;
+    }
+
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public Color getTextColor() {
+        return textColor;
+    }
+
+    public void setLabels(String title, String xAxisLabel, String yAxisLabel) {
+        this.title = title;
+        this.xAxisLabel = xAxisLabel;
+        this.yAxisLabel = yAxisLabel;
+        staticLayer = null;
+    }
+
+    // Shows all of data with the bars at zero, ready to grow
+    public void setData(Map<String, Double> data, double maxValue) {
+        this.maxValue = maxValue;
+        setKeys(data);
+        viewStart = 0;
+        viewCount = keys.length;
+        animationFraction = 0;
+    }
+
+    // Replaces the values and shows the bars at their full height. Returns
+    // true when the layout stays the same, so only the columns for which
+    // updateColumn() reports a change need repainting.
+    boolean updateBars(Map<String, Double> data, double maxValue) {
+        boolean wasAnimating = animationFraction < 1;
+        animationFraction = 1;
+
+        if (maxValue != this.maxValue || !sameKeys(data)) {
+            // Keep the zoomed window where it was, or keep showing everything
+            boolean showingAll = viewStart == 0 && viewCount == keys.length;
+            this.maxValue = maxValue;
+            setKeys(data);
+            if (showingAll) {
+                viewCount = keys.length;
+            }
+            clampView();
+            return false;
+        }
+
+        int i = 0;
+        for (Double value : data.values()) {
+            values[i++] = value;
+        }
+        if (!layoutValid || wasAnimating) {
+            // Bars cut off mid-animation all jump to their values
+            layoutValid = false;
+            return false;
+        }
+        return true;
+    }
+
+    // After updateBars(), rebins column c; true when its bar changed
+    boolean updateColumn(int c) {
+        double value = binValue(c);
+        if (value == columnValues[c]) {
+            return false;
+        }
+        columnValues[c] = value;
+        columnHeights[c] = value;
+        return true;
+    }
+
+    // After the columns are updated, rescales; true when the axis changed
+    boolean updateAxis() {
+        double oldScale = scaleMax;
+        if (updateScale() == oldScale) {
+            return false;
+        }
+        staticLayer = null;
+        return true;
+    }
+
+    private void setKeys(Map<String, Double> data) {
+        keys = data.keySet().toArray(new String[data.size()]);
+        values = new double[keys.length];
+        int i = 0;
+        for (Double value : data.values()) {
+            values[i++] = value;
+        }
+        layoutValid = false;
+        staticLayer = null;
+    }
+
+    private boolean sameKeys(Map<String, Double> data) {
+        if (data.size() != keys.length) {
+            return false;
+        }
+        int i = 0;
+        for (String key : data.keySet()) {
+            if (!key.equals(keys[i++])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getKeyCount() {
+        return keys.length;
+    }
+
+    int getViewStart() {
+        return viewStart;
+    }
+
+    int getViewCount() {
+        return viewCount;
+    }
+
+    // Width of the plot in the last layout; 0 before the first
+    int getPlotWidth() {
+        return plotWidth;
+    }
+
+    // Zooms by factor (< 1 zooms in) keeping the category under x in place.
+    // Returns true when the window changed.
+    boolean zoom(int x, double factor) {
+        if (keys.length == 0 || plotWidth <= 0) {
+            return false;
+        }
+        double at = Math.min(1, Math.max(0, (double) (x - LEFT_PADDING) / plotWidth));
+        double anchor = viewStart + at * viewCount;
+        int count = (int) Math.round(viewCount * factor);
+        if (count == viewCount) {
+            count += factor < 1 ? -1 : 1;
+        }
+        count = Math.max(1, Math.min(keys.length, count));
+        return setView((int) Math.round(anchor - at * count), count);
+    }
+
+    // Shows count categories from start on; true when the window changed
+    boolean setView(int start, int count) {
+        int oldStart = viewStart;
+        int oldCount = viewCount;
+        viewStart = start;
+        viewCount = count;
+        clampView();
+        if (viewStart == oldStart && viewCount == oldCount) {
+            return false;
+        }
+        layoutValid = false;
+        staticLayer = null;
+        return true;
+    }
+
+    private void clampView() {
+        viewCount = Math.max(Math.min(1, keys.length), Math.min(keys.length, viewCount));
+        viewStart = Math.max(0, Math.min(keys.length - viewCount, viewStart));
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    // Area covered by column c and its value label
+    Rectangle columnBounds(int c) {
+        // Value labels can be wider than the bar, so include the gaps on both sides
+        int margin = Math.max(0, slotWidth - barWidth) + 20;
+        return new Rectangle(columnX[c] - margin, 0, barWidth + 2 * margin, plotHeight + PADDING + 1);
+    }
+
+    // Moves every bar to fraction of its value. If the layout is current,
+    // passes regions the strip of each column whose bar top or value label
+    // changed and returns true; otherwise everything needs repainting.
+    boolean animateTo(double fraction, DirtyRegions regions) {
+        animationFraction = fraction;
+        if (!layoutValid) {
+            return false;
+        }
+        int margin = (slotWidth - barWidth) / 2 + 1;
+        for (int c = 0; c < columnCount; c++) {
+            double oldHeight = columnHeights[c];
+            double newHeight = columnValues[c] * fraction;
+            columnHeights[c] = newHeight;
+            int oldTop = barTop(oldHeight);
+            int newTop = barTop(newHeight);
+            if (oldTop != newTop || Math.round(oldHeight) != Math.round(newHeight)) {
+                int top = Math.min(oldTop, newTop) - VALUE_LABEL_HEIGHT;
+                int bottom = Math.max(oldTop, newTop) + 1;
+                regions.changed(columnX[c] - margin, top, barWidth + 2 * margin + 1, bottom - top + 1);
+            }
+        }
+        return true;
+    }
+
+    // Receives the areas animateTo() changed
+    interface DirtyRegions {
+        void changed(int x, int y, int width, int height);
+    }
+
+    private void applyAnimationFraction() {
+        for (int c = 0; c < columnCount; c++) {
+            columnHeights[c] = columnValues[c] * animationFraction;
+        }
+    }
+
+    // Y coordinate of the top of a bar of the given height
+    private int barTop(double height) {
+        if (scaleMax <= 0) {
+            return plotHeight + PADDING;
+        }
+        return plotHeight + PADDING - (int) (plotHeight * Math.min(1, height / scaleMax));
+    }
+
+    // Renders the chart with its current data, labels, theme colors and zoom
+    // window into a new image, with every bar at its final height. Works
+    // under java.awt.headless=true.
+    public BufferedImage renderImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setColor(backgroundColor);
+            g2d.fillRect(0, 0, width, height);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            renderOffscreen(new GraphicsCanvas(g2d), width, height);
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    // Same as renderImage(), as an SVG document
+    public void writeSvg(Writer out, int width, int height) throws IOException {
+        SvgCanvas canvas = new SvgCanvas(this, width, height, backgroundColor);
+        renderOffscreen(canvas, width, height);
+        out.write(canvas.finish());
+    }
+
+    private void renderOffscreen(Canvas canvas, int width, int height) {
+        if (keys.length == 0 || maxValue == 0) {
+            drawEmptyChart(canvas, width, height);
+            return;
+        }
+        double fraction = animationFraction;
+        animationFraction = 1;
+        layoutValid = false;
+        try {
+            updateLayout(width, height);
+            drawStaticParts(canvas);
+            drawBars(canvas, 0, columnCount - 1);
+        } finally {
+            // A screen painting through this lays itself out again on its next paint
+            animationFraction = fraction;
+            layoutValid = false;
+            staticLayer = null;
+        }
+    }
+
+    // Paints the chart at the given size, drawing only the bars that touch
+    // the clip. Used for every frame on screen.
+    public void paint(Graphics2D g2d, int width, int height) {
+        screenCanvas.use(g2d);
+
+        if (keys.length == 0 || maxValue == 0) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            drawEmptyChart(screenCanvas, width, height);
+            return;
+        }
+
+        updateLayout(width, height);
+        g2d.drawImage(staticLayer(g2d), 0, 0, width, height, null);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Only the columns touching the clip need to be drawn
+        Rectangle clip = g2d.getClipBounds();
+        int first = 0;
+        int last = columnCount - 1;
+        if (clip != null && slotWidth > 0) {
+            int reach = slotWidth + barWidth;
+            first = Math.max(0, (clip.x - reach - columnX[0]) / slotWidth);
+            last = Math.min(last, (clip.x + clip.width + reach - columnX[0]) / slotWidth);
+        }
+
+        drawBars(screenCanvas, first, last);
+    }
+
+    private void drawBars(Canvas canvas, int first, int last) {
+        if (scaleMax <= 0) {
+            return;
+        }
+        canvas.setFont(TICK_FONT);
+        FontMetrics fm = tickMetrics();
+        for (int c = first; c <= last; c++) {
+            int x = columnX[c];
+            int y = barTop(columnHeights[c]);
+            int barHeight = plotHeight + PADDING - y;
+
+            canvas.setColor(barColor);
+            canvas.fillRect(x, y, barWidth, barHeight);
+            canvas.setColor(textColor);
+            canvas.drawRect(x, y, barWidth, barHeight);
+
+            // Draw value above bar, unless it would run into the neighbours
+            int length = formatValue(columnHeights[c], labelChars);
+            int offset = labelChars.length - length;
+            int labelWidth = fm.charsWidth(labelChars, offset, length);
+            if (labelWidth <= slotWidth) {
+                canvas.drawChars(labelChars, offset, length, x + (barWidth - labelWidth) / 2, y - 5);
+            }
+        }
+    }
+
+    // Text describing the bar at x in the last layout, or null if there is none
+    String toolTipAt(int x) {
+        if (!layoutValid || columnCount == 0 || slotWidth <= 0) {
+            return null;
+        }
+        int c = (x - columnX[0] + (slotWidth - barWidth) / 2) / slotWidth;
+        if (x < columnX[0] || c >= columnCount) {
+            return null;
+        }
+        int from = columnFirst[c];
+        int to = columnFirst[c + 1];
+        if (to - from == 1) {
+            return keys[from] + ": " + formatTooltipValue(values[from]);
+        }
+        return keys[from] + " – " + keys[to - 1] + " (" + (to - from) + " bars), max "
+                + formatTooltipValue(columnValues[c]);
+    }
+
+    private void updateLayout(int width, int height) {
+        if (layoutValid && layoutWidth == width && layoutHeight == height) {
+            return;
+        }
+        layoutValid = true;
+        layoutWidth = width;
+        layoutHeight = height;
+        staticLayer = null;
+        clampView();
+
+        plotWidth = layoutWidth - (LEFT_PADDING + PADDING);
+        plotHeight = layoutHeight - (PADDING + BOTTOM_PADDING);
+
+        // One column per category while they fit, otherwise bins of neighbours
+        columnCount = Math.min(viewCount, Math.max(1, plotWidth / MIN_SLOT_WIDTH));
+        if (columnX.length != columnCount) {
+            columnX = new int[columnCount];
+            columnFirst = new int[columnCount + 1];
+            columnValues = new double[columnCount];
+            columnHeights = new double[columnCount];
+        }
+
+        // Calculate bar width based on column count
+        int dataSize = Math.max(1, columnCount);
+        barWidth = Math.max(10, (plotWidth / dataSize) - 10);
+        int barSpacing = (plotWidth - (barWidth * dataSize)) / (dataSize + 1);
+        slotWidth = barWidth + barSpacing;
+        for (int c = 0; c < columnCount; c++) {
+            columnX[c] = LEFT_PADDING + barSpacing + c * slotWidth;
+            columnFirst[c] = viewStart + (int) ((long) c * viewCount / columnCount);
+        }
+        columnFirst[columnCount] = viewStart + viewCount;
+
+        for (int c = 0; c < columnCount; c++) {
+            columnValues[c] = binValue(c);
+        }
+        updateScale();
+        applyAnimationFraction();
+    }
+
+    // Largest value among the categories in column c
+    private double binValue(int c) {
+        double max = values[columnFirst[c]];
+        for (int i = columnFirst[c] + 1; i < columnFirst[c + 1]; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    // The whole data set uses the caller's maximum; a zoomed window is
+    // scaled to its own tallest bar so small categories can be compared
+    private double updateScale() {
+        if (viewCount == keys.length) {
+            scaleMax = maxValue;
+        } else {
+            scaleMax = 0;
+            for (int c = 0; c < columnCount; c++) {
+                scaleMax = Math.max(scaleMax, columnValues[c]);
+            }
+        }
+        return scaleMax;
+    }
+
+    // Returns the cached static layer, redrawing it at the device scale when needed
+    private BufferedImage staticLayer(Graphics2D target) {
+        AffineTransform transform = target.getTransform();
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        if (staticLayer != null && scaleX == layerScaleX && scaleY == layerScaleY) {
+            return staticLayer;
+        }
+        int imageWidth = Math.max(1, (int) Math.ceil(layoutWidth * scaleX));
+        int imageHeight = Math.max(1, (int) Math.ceil(layoutHeight * scaleY));
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.scale(scaleX, scaleY);
+            g2d.setColor(backgroundColor);
+            g2d.fillRect(0, 0, layoutWidth, layoutHeight);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            drawStaticParts(new GraphicsCanvas(g2d));
+        } finally {
+            g2d.dispose();
+        }
+        staticLayer = image;
+        layerScaleX = scaleX;
+        layerScaleY = scaleY;
+        return image;
+    }
+
+    private void drawStaticParts(Canvas canvas) {
+        int width = plotWidth;
+        int height = plotHeight;
+
+        // Draw axes
+        canvas.setColor(textColor);
+        canvas.drawLine(LEFT_PADDING, PADDING, LEFT_PADDING, height + PADDING);
+        canvas.drawLine(LEFT_PADDING, height + PADDING, width + LEFT_PADDING, height + PADDING);
+
+        // Draw Y-axis labels
+        canvas.setFont(TICK_FONT);
+        FontMetrics fm = canvas.getFontMetrics();
+        int yLabelCount = 5;
+        for (int i = 0; i <= yLabelCount; i++) {
+            int length = formatValue(scaleMax * i / yLabelCount, labelChars);
+            int offset = labelChars.length - length;
+            int y = height + PADDING - (height * i / yLabelCount);
+            // Right-aligned against the tick marks
+            int x = Math.max(2, LEFT_PADDING - 8 - fm.charsWidth(labelChars, offset, length));
+            canvas.drawChars(labelChars, offset, length, x, y + 5);
+            canvas.drawLine(LEFT_PADDING - 5, y, LEFT_PADDING, y);
+        }
+
+        // Draw title
+        canvas.setFont(TITLE_FONT);
+        int titleWidth = canvas.getFontMetrics().stringWidth(title);
+        canvas.drawString(title, (layoutWidth - titleWidth) / 2, 20);
+
+        // Say when the chart is zoomed or binned, if there is room beside the title
+        if (viewCount < keys.length || columnCount < viewCount) {
+            canvas.setFont(TICK_FONT);
+            String status = (viewStart + 1) + "–" + (viewStart + viewCount) + " of " + keys.length
+                    + (columnCount < viewCount ? ", max per bar" : "");
+            int statusX = layoutWidth - PADDING - canvas.getFontMetrics().stringWidth(status);
+            if (statusX > (layoutWidth + titleWidth) / 2 + 10) {
+                canvas.drawString(status, statusX, 20);
+            }
+        }
+
+        // Draw X and Y axis labels
+        canvas.setFont(AXIS_FONT);
+        canvas.drawString(xAxisLabel, width / 2, height + PADDING + 40);
+
+        // Draw Y-axis label vertically
+        canvas.drawRotatedString(yAxisLabel, 15, height / 2, -Math.PI / 2, 15, height / 2);
+
+        // Draw X-axis labels (slanted), thinned out so they do not overlap
+        canvas.setFont(TICK_FONT);
+        int labelY = height + PADDING + 20;
+        int every = Math.max(1, (MIN_LABEL_SPACING + slotWidth - 1) / Math.max(1, slotWidth));
+        for (int c = 0; c < columnCount; c += every) {
+            int x = columnX[c];
+            String key = keys[columnFirst[c]];
+            if (key.length() > MAX_LABEL_LENGTH) {
+                key = key.substring(0, MAX_LABEL_LENGTH - 1) + "…";
+            }
+            canvas.drawRotatedString(key, x + (barWidth - fm.stringWidth(key)) / 2, labelY,
+                    -Math.toRadians(45), x + (barWidth / 2), labelY);
+        }
+    }
+
+    private FontMetrics tickMetrics() {
+        if (tickMetrics == null) {
+            tickMetrics = fontMetrics(TICK_FONT);
+        }
+        return tickMetrics;
+    }
+
+    // Writes a rounded value right-aligned into buf, shortening large values
+    // to e.g. 12.5K or 3.4M, and returns the number of chars used
+    private static int formatValue(double value, char[] buf) {
+        long rounded = Math.round(value);
+        if (Math.abs(rounded) < 10000) {
+            return NumberText.formatLong(rounded, buf, buf.length);
+        }
+        char suffix = 'K';
+        double scaled = value / 1e3;
+        if (Math.abs(scaled) >= 1e3) {
+            suffix = 'M';
+            scaled /= 1e3;
+        }
+        if (Math.abs(scaled) >= 1e3) {
+            suffix = 'B';
+            scaled /= 1e3;
+        }
+        int end = buf.length - 1;
+        buf[end] = suffix;
+        if (Math.abs(scaled) >= 100) {
+            return 1 + NumberText.formatLong(Math.round(scaled), buf, end);
+        }
+        // One decimal place, dropped when it is zero
+        long tenths = Math.abs(Math.round(scaled * 10));
+        int length;
+        if (tenths % 10 == 0) {
+            length = 1 + NumberText.formatLong(tenths / 10, buf, end);
+        } else {
+            buf[end - 1] = (char) ('0' + tenths % 10);
+            buf[end - 2] = '.';
+            length = 3 + NumberText.formatLong(tenths / 10, buf, end - 2);
+        }
+        if (scaled < 0) {
+            buf[buf.length - ++length] = '-';
+        }
+        return length;
+    }
+
+    private static String formatTooltipValue(double value) {
+        return value == Math.rint(value) ? String.format("%,d", (long) value) : String.format("%,.2f", value);
+    }
+
+    private void drawEmptyChart(Canvas canvas, int width, int height) {
+        canvas.setColor(textColor);
+        canvas.setFont(TITLE_FONT);
+        String message = "No data available";
+        FontMetrics fm = canvas.getFontMetrics();
+        int messageWidth = fm.stringWidth(message);
+        canvas.drawString(message, (width - messageWidth) / 2, height / 2);
+    }
+
+    // The drawing calls the chart makes, so the same layout code can paint
+    // the screen, an image or an SVG document
+    private interface Canvas {
+        void setColor(Color color);
+
+        void setFont(Font font);
+
+        FontMetrics getFontMetrics();
+
+        void drawLine(int x1, int y1, int x2, int y2);
+
+        void fillRect(int x, int y, int width, int height);
+
+        void drawRect(int x, int y, int width, int height);
+
+        void drawString(String text, int x, int y);
+
+        void drawChars(char[] chars, int offset, int length, int x, int y);
+
+        // Draws text rotated by theta radians around (pivotX, pivotY)
+        void drawRotatedString(String text, int x, int y, double theta, int pivotX, int pivotY);
+    }
+
+    private static class GraphicsCanvas implements Canvas {
+        private Graphics2D g2d;
+
+        GraphicsCanvas(Graphics2D g2d) {
+            this.g2d = g2d;
+        }
+
+        // Points the canvas at another Graphics, so painting needs no new canvas per frame
+        void use(Graphics2D g2d) {
+            this.g2d = g2d;
+        }
+
+        @Override
+        public void setColor(Color color) {
+            g2d.setColor(color);
+        }
+
+        @Override
+        public void setFont(Font font) {
+            g2d.setFont(font);
+        }
+
+        @Override
+        public FontMetrics getFontMetrics() {
+            return g2d.getFontMetrics();
+        }
+
+        @Override
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            g2d.drawLine(x1, y1, x2, y2);
+        }
+
+        @Override
+        public void fillRect(int x, int y, int width, int height) {
+            g2d.fillRect(x, y, width, height);
+        }
+
+        @Override
+        public void drawRect(int x, int y, int width, int height) {
+            g2d.drawRect(x, y, width, height);
+        }
+
+        @Override
+        public void drawString(String text, int x, int y) {
+            g2d.drawString(text, x, y);
+        }
+
+        @Override
+        public void drawChars(char[] chars, int offset, int length, int x, int y) {
+            g2d.drawChars(chars, offset, length, x, y);
+        }
+
+        @Override
+        public void drawRotatedString(String text, int x, int y, double theta, int pivotX, int pivotY) {
+            AffineTransform unrotated = g2d.getTransform();
+            g2d.rotate(theta, pivotX, pivotY);
+            g2d.drawString(text, x, y);
+            g2d.setTransform(unrotated);
+        }
+    }
+
+    // Collects the drawing calls as SVG elements. Text positions come from
+    // the painter's font metrics, so the layout matches the PNG.
+    private static class SvgCanvas implements Canvas {
+        private final BarChartPainter metricsSource;
+        private final StringBuilder svg = new StringBuilder(16 * 1024);
+        private String color = "#000000";
+        private Font font = TICK_FONT;
+
+        SvgCanvas(BarChartPainter metricsSource, int width, int height, Color background) {
+            this.metricsSource = metricsSource;
+            svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                    .append("\" height=\"").append(height).append("\" viewBox=\"0 0 ").append(width).append(' ')
+                    .append(height).append("\">\n")
+                    .append("<rect width=\"100%\" height=\"100%\" fill=\"").append(hex(background)).append("\"/>\n");
+        }
+
+        String finish() {
+            return svg.append("</svg>\n").toString();
+        }
+
+        @Override
+        public void setColor(Color color) {
+            this.color = hex(color);
+        }
+
+        @Override
+        public void setFont(Font font) {
+            this.font = font;
+        }
+
+        @Override
+        public FontMetrics getFontMetrics() {
+            return metricsSource.fontMetrics(font);
+        }
+
+        // Lines and outlines sit on pixel centres, as Java2D strokes them
+        @Override
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            svg.append("<line x1=\"").append(x1 + 0.5).append("\" y1=\"").append(y1 + 0.5)
+                    .append("\" x2=\"").append(x2 + 0.5).append("\" y2=\"").append(y2 + 0.5)
+                    .append("\" stroke=\"").append(color).append("\"/>\n");
+        }
+
+        @Override
+        public void fillRect(int x, int y, int width, int height) {
+            svg.append("<rect x=\"").append(x).append("\" y=\"").append(y).append("\" width=\"").append(width)
+                    .append("\" height=\"").append(height).append("\" fill=\"").append(color).append("\"/>\n");
+        }
+
+        @Override
+        public void drawRect(int x, int y, int width, int height) {
+            svg.append("<rect x=\"").append(x + 0.5).append("\" y=\"").append(y + 0.5).append("\" width=\"")
+                    .append(width).append("\" height=\"").append(height)
+                    .append("\" fill=\"none\" stroke=\"").append(color).append("\"/>\n");
+        }
+
+        @Override
+        public void drawString(String text, int x, int y) {
+            startText(x, y);
+            appendEscaped(text);
+            svg.append("</text>\n");
+        }
+
+        @Override
+        public void drawChars(char[] chars, int offset, int length, int x, int y) {
+            drawString(new String(chars, offset, length), x, y);
+        }
+
+        @Override
+        public void drawRotatedString(String text, int x, int y, double theta, int pivotX, int pivotY) {
+            startText(x, y);
+            svg.setLength(svg.length() - 1);
+            svg.append(" transform=\"rotate(").append(Math.toDegrees(theta)).append(' ').append(pivotX).append(' ')
+                    .append(pivotY).append(")\">");
+            appendEscaped(text);
+            svg.append("</text>\n");
+        }
+
+        private void startText(int x, int y) {
+            svg.append("<text x=\"").append(x).append("\" y=\"").append(y).append("\" font-family=\"")
+                    .append(font.getName()).append(", sans-serif\" font-size=\"").append(font.getSize())
+                    .append('"');
+            if (font.isBold()) {
+                svg.append(" font-weight=\"bold\"");
+            }
+            svg.append(" fill=\"").append(color).append("\">");
+        }
+
+        private void appendEscaped(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&':
+                        svg.append("&amp;");
+                        break;
+                    case '<':
+                        svg.append("&lt;");
+                        break;
+                    case '>':
+                        svg.append("&gt;");
+                        break;
+                    default:
+                        svg.append(c);
+                }
+            }
+        }
+
+        private static String hex(Color color) {
+            return String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+// Helpers for writing binary files through a reusable direct buffer, as
+// done by SnapshotCache and the columnar export
+final class ChannelBuffers {
+
+    private ChannelBuffers() {
+    }
+
+    // Flushes the buffer when fewer than needed bytes are left; grows it for oversized values
+    static ByteBuffer ensureRoom(WritableByteChannel channel, ByteBuffer out, int needed) throws IOException {
+        if (out.remaining() >= needed) {
+            return out;
+        }
+        flush(channel, out);
+        if (out.capacity() < needed) {
+            out = ByteBuffer.allocateDirect(needed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return out;
+    }
+
+    // Writes out everything in the buffer and clears it
+    static void flush(WritableByteChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
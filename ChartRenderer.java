@@ -0,0 +1,117 @@
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Renders aggregate views to PNG or SVG files without a display, using the
+// same BarChartPainter layout as the desktop app. Each chart gets its own
+// painter and no Swing component, so many can be rendered in parallel on a
+// thread pool.
+public class ChartRenderer {
+
+    public enum Theme {
+        // Same colors as the desktop app's light and dark modes
+        LIGHT(Color.WHITE, Color.BLACK),
+        DARK(new Color(18, 18, 18), Color.WHITE);
+
+        private final Color background;
+        private final Color text;
+
+        Theme(Color background, Color text) {
+            this.background = background;
+            this.text = text;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Theme theme;
+
+    public ChartRenderer(int width, int height, Theme theme) {
+        this.width = width;
+        this.height = height;
+        this.theme = theme;
+    }
+
+    // Renders one view to file; a name ending in .svg gives SVG, anything else PNG
+    public void render(EarningsAggregate data, EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure, File file) throws IOException {
+        Map<String, Double> view = data.view(groupBy, function, measure);
+        double maxValue = 0;
+        for (double value : view.values()) {
+            maxValue = Math.max(maxValue, value);
+        }
+        String label = EarningsExporter.viewLabel(function, measure);
+
+        BarChartPainter chart = new BarChartPainter();
+        chart.setThemeColors(theme.background, theme.text);
+        chart.setLabels(label + " by " + groupBy, groupBy.getLabel(), label);
+        chart.setData(view, maxValue);
+
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".svg")) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                chart.writeSvg(out, width, height);
+            }
+        } else if (!ImageIO.write(chart.renderImage(width, height), "png", file)) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    // Renders every group-by and aggregate combination into directory, e.g.
+    // genre-avg-players.png, on a pool of threads. Returns the files written.
+    public List<File> renderAllViews(final EarningsAggregate data, File directory, String extension, int threads)
+            throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        List<File> files = new ArrayList<>();
+        List<Callable<Void>> jobs = new ArrayList<>();
+        for (final EarningsAggregate.GroupBy groupBy : EarningsAggregate.GroupBy.values()) {
+            for (final EarningsAggregate.Function function : EarningsAggregate.Function.values()) {
+                for (final EarningsAggregate.Measure measure : EarningsAggregate.Measure.values()) {
+                    final File file = new File(directory, fileName(groupBy, function, measure) + "." + extension);
+                    files.add(file);
+                    jobs.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            render(data, groupBy, function, measure, file);
+                            return null;
+                        }
+                    });
+                    // COUNT ignores the measure, so it only needs one chart
+                    if (function == EarningsAggregate.Function.COUNT) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+        try {
+            List<Future<Void>> results = pool.invokeAll(jobs);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    throw new IOException(files.get(i) + ": " + cause.getMessage(), cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return files;
+    }
+
+    static String fileName(EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure) {
+        String name = groupBy.name().toLowerCase(Locale.ROOT) + "-" + function.name().toLowerCase(Locale.ROOT);
+        if (function != EarningsAggregate.Function.COUNT) {
+            name += "-" + measure.name().toLowerCase(Locale.ROOT);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Follows a CSV that is being appended to. A WatchService on the parent
+// directory wakes the watcher thread whenever the file changes; it then
+// parses only the complete rows after the last byte offset it has seen into
+// a small delta table and hands that to the listener. A row is complete once
+// CsvTokenizer sees its line break outside quotes, so a trailing row that is
+// still being written, including one inside a multiline quoted field, is left
+// for the next round. The starting offset must follow the same rule, i.e. be
+// the end of the last complete row the caller has read.
+//
+// A file that shrinks, or whose file key (inode) or first bytes change, was
+// replaced or rewritten, and the listener is told to start over.
+public class CsvTailWatcher implements Closeable {
+
+    public interface Listener {
+        // Called on the watcher thread with the rows appended since the last call
+        void rowsAppended(EarningsTable delta, long newOffset);
+
+        // The file shrank or was replaced, so the offset no longer means anything
+        void fileReset();
+
+        void watchFailed(IOException e);
+    }
+
+    // Also re-check on a timer, for file systems where change events are slow or missing
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+    private static final long MAX_DELTA_BYTES = 256L * 1024 * 1024;
+    // Leading bytes compared on every check to notice a rewritten file
+    private static final int HEAD_BYTES = 4096;
+
+    private final File file;
+    private final Charset charset;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Thread thread;
+    private final Object fileKey;
+    private final byte[] head;
+    private volatile boolean closed;
+    private long offset;
+
+    // offset is the number of bytes already ingested, i.e. where new rows start
+    public CsvTailWatcher(File file, long offset, Charset charset, Listener listener) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.offset = offset;
+        this.charset = charset;
+        this.listener = listener;
+        // null where the platform has no file keys; the head check still applies
+        this.fileKey = Files.readAttributes(this.file.toPath(), BasicFileAttributes.class).fileKey();
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+            this.head = readHead(channel, (int) Math.min(offset, HEAD_BYTES));
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchLoop();
+            }
+        }, "csv-tail-" + file.getName());
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void watchLoop() {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // Events for other files in the directory are harmless:
+                    // readAppended() only looks at our file
+                    key.pollEvents();
+                    key.reset();
+                }
+                if (!closed) {
+                    readAppended();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close() was called
+        } catch (IOException e) {
+            if (!closed) {
+                listener.watchFailed(e);
+            }
+        }
+    }
+
+    // Reads every complete row after offset and advances the offset
+    private void readAppended() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Deleted, or between the delete and create of a replacement
+            reset();
+            return;
+        }
+        try {
+            long size = channel.size();
+            if (size < offset || replaced(channel)) {
+                reset();
+                return;
+            }
+
+            // Large backlogs are handed over in several deltas
+            while (!closed && offset < size) {
+                long end = Math.min(size, offset + MAX_DELTA_BYTES);
+                if (!readRows(channel, end)) {
+                    if (end - offset == MAX_DELTA_BYTES) {
+                        // No row ends within a whole delta, so none ever will
+                        throw new IOException("The row at byte " + offset + " is longer than "
+                                + (MAX_DELTA_BYTES >> 20) + " MB");
+                    }
+                    return;
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void reset() {
+        listener.fileReset();
+        closed = true;
+    }
+
+    // True when the path now holds another file than the one offset refers
+    // to: a different file key where the platform has them, or other first bytes
+    private boolean replaced(FileChannel channel) throws IOException {
+        Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        if (fileKey != null && !fileKey.equals(key)) {
+            return true;
+        }
+        return !Arrays.equals(head, readHead(channel, head.length));
+    }
+
+    private static byte[] readHead(FileChannel channel, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // Keep reading until the buffer is full or the file ends
+        }
+        return Arrays.copyOf(head.array(), head.position());
+    }
+
+    // Parses the complete rows in [offset, end) into a delta table for the
+    // listener and moves the offset past them. A row cut off at end is left
+    // for the next call. Returns false when there was no complete row.
+    private boolean readRows(FileChannel channel, long end) throws IOException {
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, end - offset);
+        CsvTokenizer tokenizer = new CsvTokenizer(new ByteBufferInputStream(region), EarningsAggregate.FIELD_COUNT);
+        EarningsTable delta = new EarningsTable(charset);
+        long complete = 0;
+        if (offset == 0) {
+            // Skip header line
+            if (!tokenizer.nextRow() || !tokenizer.rowTerminated()) {
+                return false;
+            }
+            complete = tokenizer.bytesConsumed();
+        }
+        while (tokenizer.nextRow() && tokenizer.rowTerminated()) {
+            delta.append(tokenizer);
+            complete = tokenizer.bytesConsumed();
+        }
+        if (complete == 0) {
+            return false;
+        }
+        offset += complete;
+        listener.rowsAppended(delta, offset);
+        return true;
+    }
+}
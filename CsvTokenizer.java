@@ -0,0 +1,423 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// Byte-level CSV row scanner. Instead of building a String per line and
+// splitting it, it records where each wanted field starts and ends inside
+// its read buffer so values can be parsed straight from the bytes.
+//
+// Rows are scanned in two tiers. The fast path only looks for commas and
+// line breaks and covers every row without a quoted field, which is nearly
+// all of a typical export. The first field that opens with a quote hands
+// the rest of the row to an RFC 4180 scanner that handles quoted fields
+// (e.g. "Korea, Republic of"), "" escapes and line breaks inside quotes.
+// Quoting that would misalign the columns is still split as well as
+// possible but flagged by hasQuoteError(). A quote inside an unquoted field
+// is kept as text in both paths.
+public class CsvTokenizer {
+
+    // Returned by parseInt when a field is empty or not a plain integer
+    public static final int NOT_AN_INT = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // Exact powers of ten for the fast decimal path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private long bytesConsumed;
+    private long readNanos;
+
+    // Offsets of the fields of the current row, only up to maxFields
+    private final int[] fieldStart;
+    private final int[] fieldEnd;
+    private int fieldCount;
+
+    // Raw bytes of the current row in buf, line break included
+    private int rowStart;
+    private int rowEnd;
+    private long rowLine;
+    private long nextLine = 1;
+    // Set by the slow path only
+    private int rowLineBreaks;
+    private boolean quoteError;
+    private boolean rowTerminated;
+    private long quotedRows;
+    private long multilineRows;
+
+    public CsvTokenizer(InputStream in, int maxFields) {
+        this(in, maxFields, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(InputStream in, int maxFields, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[Math.max(16, bufferSize)];
+        this.fieldStart = new int[maxFields];
+        this.fieldEnd = new int[maxFields];
+    }
+
+    // Advances to the next row. Returns false once the input is exhausted.
+    public boolean nextRow() throws IOException {
+        while (true) {
+            if (pos < limit || eof) {
+                if (pos >= limit) {
+                    fieldCount = 0;
+                    return false;
+                }
+                int next = scanRow(pos);
+                if (next >= 0) {
+                    bytesConsumed += next - pos;
+                    rowStart = pos;
+                    rowEnd = next;
+                    rowLine = nextLine;
+                    nextLine += 1 + rowLineBreaks;
+                    pos = next;
+                    return true;
+                }
+            }
+            fill();
+        }
+    }
+
+    // Total number of fields in the current row, including ones not recorded
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // True when the current row had text between a closing quote and the
+    // next delimiter, or a quoted field left open at the end of input
+    public boolean hasQuoteError() {
+        return quoteError;
+    }
+
+    // True when the current row ended in a line break outside quotes, false
+    // when the input ran out first, e.g. while the row is still being written
+    public boolean rowTerminated() {
+        return rowTerminated;
+    }
+
+    // Physical line the current row starts on, 1 for the first line
+    public long lineNumber() {
+        return rowLine;
+    }
+
+    // Rows returned so far that contained a quote and took the slow path
+    public long quotedRows() {
+        return quotedRows;
+    }
+
+    // Rows returned so far with a line break inside a quoted field
+    public long multilineRows() {
+        return multilineRows;
+    }
+
+    // Offsets of the current row's raw bytes in buffer(), including its
+    // line break; valid until the next call to nextRow()
+    public int rowStart() {
+        return rowStart;
+    }
+
+    public int rowEnd() {
+        return rowEnd;
+    }
+
+    // Bytes of input belonging to the rows returned so far
+    public long bytesConsumed() {
+        return bytesConsumed;
+    }
+
+    // Time spent waiting on the underlying stream, i.e. reading rather
+    // than scanning; checked once per buffer fill, not per row
+    public long readNanos() {
+        return readNanos;
+    }
+
+    // Parses a field as a base-10 int, ignoring surrounding blanks
+    public int parseInt(int field) {
+        if (field >= fieldCount || field >= fieldStart.length) {
+            return NOT_AN_INT;
+        }
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        while (i < end && isBlank(buf[i])) {
+            i++;
+        }
+        while (end > i && isBlank(buf[end - 1])) {
+            end--;
+        }
+        if (i == end) {
+            return NOT_AN_INT;
+        }
+
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+        // Nine digits always fit in an int; anything longer is not a year anyway
+        if (i == end || end - i > 9) {
+            return NOT_AN_INT;
+        }
+
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_AN_INT;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Parses a field as a decimal number such as 190075.61, ignoring
+    // surrounding blanks. Returns NaN when the field is empty or not numeric.
+    public double parseDouble(int field) {
+        if (field >= fieldCount || field >= fieldStart.length) {
+            return Double.NaN;
+        }
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        while (i < end && isBlank(buf[i])) {
+            i++;
+        }
+        while (end > i && isBlank(buf[end - 1])) {
+            end--;
+        }
+        if (i == end) {
+            return Double.NaN;
+        }
+
+        int start = i;
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        // Plain digits with an optional fraction: mantissa / 10^scale is
+        // exact as long as the mantissa stays below 2^53
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            byte c = buf[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 15) {
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+
+        // Exponents, long digit runs and the like take the slow path
+        try {
+            return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Decodes a field into a String, undoing "" escapes inside quotes
+    public String getString(int field, Charset charset) {
+        if (field >= fieldCount || field >= fieldStart.length) {
+            return "";
+        }
+        return FieldDictionary.decode(buf, fieldStart[field], fieldEnd[field], charset);
+    }
+
+    // Raw access for callers that key on the field bytes without decoding
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int fieldStart(int field) {
+        return fieldStart[field];
+    }
+
+    public int fieldEnd(int field) {
+        return fieldEnd[field];
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Scans one row starting at start. Records field offsets and returns the
+    // offset just past the row, or -1 if the row is not complete in the buffer.
+    private int scanRow(int start) {
+        final byte[] b = buf;
+        final int lim = limit;
+        int i = start;
+        int field = 0;
+
+        while (true) {
+            if (i < lim && b[i] == '"') {
+                // The fields so far are kept; the slow path resumes at this one
+                return scanQuotedRow(i, field);
+            }
+            int fs = i;
+            while (i < lim) {
+                byte c = b[i];
+                if (c == ',' || c == '\n') {
+                    break;
+                }
+                i++;
+            }
+            if (i >= lim && !eof) {
+                return -1;
+            }
+
+            int fe = i;
+            boolean endOfRow = i >= lim || b[i] == '\n';
+            if (endOfRow && fe > fs && b[fe - 1] == '\r') {
+                fe--;
+            }
+            if (field < fieldStart.length) {
+                fieldStart[field] = fs;
+                fieldEnd[field] = fe;
+            }
+            field++;
+
+            if (endOfRow) {
+                fieldCount = field;
+                rowLineBreaks = 0;
+                quoteError = false;
+                rowTerminated = i < lim;
+                return i < lim ? i + 1 : lim;
+            }
+            i++; // skip the comma
+        }
+    }
+
+    // RFC 4180 scan of the rest of a row that contains a quote, from field
+    // number field at offset start. Quoted fields run to the next quote that
+    // is not doubled and may span lines; their offsets exclude the quotes.
+    private int scanQuotedRow(int start, int field) {
+        final byte[] b = buf;
+        final int lim = limit;
+        int i = start;
+        int lineBreaks = 0;
+        boolean error = false;
+
+        while (true) {
+            int fs;
+            int fe;
+
+            if (i < lim && b[i] == '"') {
+                i++;
+                fs = i;
+                while (true) {
+                    while (i < lim && b[i] != '"') {
+                        if (b[i] == '\n') {
+                            lineBreaks++;
+                        }
+                        i++;
+                    }
+                    if (i + 1 >= lim) {
+                        if (!eof) {
+                            return -1;
+                        }
+                        // Unterminated at the end of input, or closed by the last byte
+                        error |= i >= lim;
+                        fe = Math.min(i, lim);
+                        i = lim;
+                        break;
+                    }
+                    if (b[i + 1] == '"') {
+                        i += 2;
+                        continue;
+                    }
+                    fe = i;
+                    i++;
+                    break;
+                }
+                // Text between the closing quote and the delimiter is skipped
+                int after = i;
+                while (i < lim && b[i] != ',' && b[i] != '\n') {
+                    i++;
+                }
+                if (i > after && !(i == after + 1 && b[after] == '\r' && (i >= lim || b[i] == '\n'))) {
+                    error = true;
+                }
+            } else {
+                // Unquoted field; a quote inside it is kept as text
+                fs = i;
+                while (i < lim && b[i] != ',' && b[i] != '\n') {
+                    i++;
+                }
+                fe = i;
+            }
+
+            if (i >= lim && !eof) {
+                return -1;
+            }
+
+            boolean endOfRow = i >= lim || b[i] == '\n';
+            if (endOfRow && fe > fs && b[fe - 1] == '\r') {
+                fe--;
+            }
+            if (field < fieldStart.length) {
+                fieldStart[field] = fs;
+                fieldEnd[field] = fe;
+            }
+            field++;
+
+            if (endOfRow) {
+                fieldCount = field;
+                rowLineBreaks = lineBreaks;
+                quoteError = error;
+                rowTerminated = i < lim;
+                quotedRows++;
+                if (lineBreaks > 0) {
+                    multilineRows++;
+                }
+                return i < lim ? i + 1 : lim;
+            }
+            i++; // skip the comma
+        }
+    }
+
+    // Moves the unconsumed tail to the front of the buffer and reads more
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            // A single row is larger than the buffer
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        long start = System.nanoTime();
+        int n = in.read(buf, limit, buf.length - limit);
+        readNanos += System.nanoTime() - start;
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+}
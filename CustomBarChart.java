@@ -0,0 +1,246 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import javax.swing.Timer;
+
+// Custom Bar Chart Implementation
+//
+// The layout and drawing live in BarChartPainter; this panel animates the
+// bars, handles the mouse and repaints only what changed. The mouse wheel
+// zooms in around the pointer, dragging (or Shift+wheel) scrolls and a
+// double-click shows everything again.
+public class CustomBarChart extends JPanel {
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    private final BarChartPainter painter = new BarChartPainter() {
+        @Override
+        FontMetrics fontMetrics(Font font) {
+            return CustomBarChart.this.getFontMetrics(font);
+        }
+    };
+    // Repaints the strips animateTo() reports, without allocating per frame
+    private final BarChartPainter.DirtyRegions repaintRegions = new BarChartPainter.DirtyRegions() {
+        @Override
+        public void changed(int x, int y, int width, int height) {
+            repaint(x, y, width, height);
+        }
+    };
+    private Timer animationTimer;
+    private long animationStart;
+    private long animationNanos = durationNanos(ANIMATION_DURATION);
+    // Default duration in milliseconds, e.g. -Desports.animation.millis=0 to switch animation off
+    private static final int ANIMATION_DURATION = Integer.getInteger("esports.animation.millis", 15000);
+    private static final int FRAME_DELAY = 16; // ~60 frames per second
+    private static final double ZOOM_STEP = 1.25;
+
+    // Optional stats text drawn over the top left of the plot; null when hidden
+    private String[] overlayLines;
+    private final Rectangle overlayBounds = new Rectangle();
+    private Color overlayFill = translucent(painter.getBackgroundColor());
+
+    public CustomBarChart() {
+        setBackground(painter.getBackgroundColor());
+        // Enables getToolTipText(MouseEvent)
+        setToolTipText("");
+
+        MouseAdapter navigation = new MouseAdapter() {
+            private int dragX;
+            private int dragStart;
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isShiftDown()) {
+                    int step = (int) Math.signum(e.getWheelRotation()) * Math.max(1, painter.getViewCount() / 10);
+                    setView(painter.getViewStart() + step, painter.getViewCount());
+                } else if (painter.zoom(e.getX(), e.getWheelRotation() < 0 ? 1 / ZOOM_STEP : ZOOM_STEP)) {
+                    repaint();
+                }
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragStart = painter.getViewStart();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                int plotWidth = painter.getPlotWidth();
+                if (plotWidth > 0) {
+                    int shift = (int) Math.round((double) (dragX - e.getX()) * painter.getViewCount() / plotWidth);
+                    setView(dragStart + shift, painter.getViewCount());
+                }
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    setView(0, painter.getKeyCount());
+                }
+            }
+        };
+        addMouseListener(navigation);
+        addMouseMotionListener(navigation);
+        addMouseWheelListener(navigation);
+    }
+
+    public void setThemeColors(Color backgroundColor, Color textColor) {
+        painter.setThemeColors(backgroundColor, textColor);
+        setBackground(backgroundColor);
+        overlayFill = translucent(backgroundColor);
+        repaint();
+    }
+
+    // Shows the given lines in a box over the chart, or hides it for null.
+    // Only the box is repainted, so this can be refreshed while animating.
+    public void setOverlay(String[] lines) {
+        repaint(overlayBounds);
+        overlayLines = lines;
+        if (lines == null) {
+            overlayBounds.setBounds(0, 0, 0, 0);
+            return;
+        }
+        FontMetrics fm = getFontMetrics(OVERLAY_FONT);
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fm.stringWidth(line));
+        }
+        overlayBounds.setBounds(BarChartPainter.LEFT_PADDING + 6, BarChartPainter.PADDING + 4, width + 12,
+                lines.length * fm.getHeight() + 8);
+        repaint(overlayBounds);
+    }
+
+    private static Color translucent(Color color) {
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), 220);
+    }
+
+    public void setLabels(String title, String xAxisLabel, String yAxisLabel) {
+        painter.setLabels(title, xAxisLabel, yAxisLabel);
+        repaint();
+    }
+
+    public void setData(Map<String, Double> data, double maxValue) {
+        // Initialize heights to zero for animation
+        painter.setData(data, maxValue);
+        repaint();
+    }
+
+    // Replaces the values without animating. When only some values change
+    // and the layout stays the same, just those bars are repainted.
+    public void updateBars(Map<String, Double> newData, double newMaxValue) {
+        if (animationTimer != null && animationTimer.isRunning()) {
+            animationTimer.stop();
+        }
+        if (!painter.updateBars(newData, newMaxValue)) {
+            repaint();
+            return;
+        }
+        for (int c = 0; c < painter.getColumnCount(); c++) {
+            if (painter.updateColumn(c)) {
+                repaint(painter.columnBounds(c));
+            }
+        }
+        if (painter.updateAxis()) {
+            repaint();
+        }
+    }
+
+    private void setView(int start, int count) {
+        if (painter.setView(start, count)) {
+            repaint();
+        }
+    }
+
+    // Length of the grow animation started by startAnimation(); 0 shows the bars at once
+    public void setAnimationDuration(int millis) {
+        animationNanos = durationNanos(millis);
+    }
+
+    // Negative durations count as 0, so the timer always finishes
+    private static long durationNanos(int millis) {
+        return Math.max(0, millis) * 1000000L;
+    }
+
+    // Grows the bars from zero. Heights follow the elapsed time rather than
+    // a tick count, so slow or dropped frames do not stretch the animation.
+    public void startAnimation() {
+        if (animationTimer != null && animationTimer.isRunning()) {
+            animationTimer.stop();
+        }
+        if (animationNanos == 0) {
+            animateTo(1);
+            return;
+        }
+
+        if (animationTimer == null) {
+            animationTimer = new Timer(FRAME_DELAY, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    double t = (double) (System.nanoTime() - animationStart) / animationNanos;
+                    if (t >= 1) {
+                        // Animation complete
+                        t = 1;
+                        animationTimer.stop();
+                    }
+                    animateTo(easeOut(t));
+                }
+            });
+            // Ticks that pile up while the EDT is busy are dropped, not replayed
+            animationTimer.setCoalesce(true);
+        }
+        animationStart = System.nanoTime();
+        animateTo(0);
+        animationTimer.start();
+    }
+
+    // Cubic ease-out: fast start, gentle landing
+    private static double easeOut(double t) {
+        double rest = 1 - t;
+        return 1 - rest * rest * rest;
+    }
+
+    // Moves every bar to fraction of its value and repaints only the strips
+    // where a bar top or value label actually changed
+    private void animateTo(double fraction) {
+        if (!painter.animateTo(fraction, repaintRegions)) {
+            repaint();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+
+        painter.paint(g2d, getWidth(), getHeight());
+        long nanos = System.nanoTime() - start;
+        EarningsMetrics.get().recordPaint(nanos);
+
+        if (overlayLines != null && g2d.hitClip(overlayBounds.x, overlayBounds.y,
+                overlayBounds.width, overlayBounds.height)) {
+            drawOverlay(g2d);
+        }
+    }
+
+    private void drawOverlay(Graphics2D g2d) {
+        Rectangle r = overlayBounds;
+        g2d.setColor(overlayFill);
+        g2d.fillRect(r.x, r.y, r.width, r.height);
+        g2d.setColor(painter.getTextColor());
+        g2d.drawRect(r.x, r.y, r.width - 1, r.height - 1);
+        g2d.setFont(OVERLAY_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int y = r.y + 4 + fm.getAscent();
+        for (String line : overlayLines) {
+            g2d.drawString(line, r.x + 6, y);
+            y += fm.getHeight();
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        return painter.toolTipAt(e.getX());
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+// Data-quality counters for one ingest: why rows were turned down, how many
+// needed the quoted-field parser and how many accepted rows lack a number.
+// Only rows the aggregate already rejected are classified, and the rest
+// comes from the tokenizer and the aggregate, so clean rows cost nothing
+// extra. Rejected rows can be copied to a Quarantine file.
+public class DataQuality {
+
+    // CSV of rejected rows shared by the files of one run, with the columns
+    // File, Line, Reason and Row, the last holding the row's original bytes
+    public static final class Quarantine implements Closeable {
+        private final File file;
+        private final Charset charset;
+        private final OutputStream out;
+        private long rows;
+
+        public Quarantine(File file, Charset charset) throws IOException {
+            this.file = file;
+            this.charset = charset;
+            this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+            out.write("File,Line,Reason,Row\n".getBytes(charset));
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        synchronized void write(String source, long line, String reason, byte[] buf, int start, int end)
+                throws IOException {
+            // The row is copied without its line break
+            while (end > start && (buf[end - 1] == '\n' || buf[end - 1] == '\r')) {
+                end--;
+            }
+            byte[] text = source.getBytes(charset);
+            writeQuoted(text, 0, text.length);
+            out.write(("," + line + ",").getBytes(charset));
+            text = reason.getBytes(charset);
+            writeQuoted(text, 0, text.length);
+            out.write(',');
+            writeQuoted(buf, start, end);
+            out.write('\n');
+            rows++;
+        }
+
+        private void writeQuoted(byte[] buf, int start, int end) throws IOException {
+            out.write('"');
+            int from = start;
+            for (int i = start; i < end; i++) {
+                if (buf[i] == '"') {
+                    out.write(buf, from, i + 1 - from);
+                    out.write('"');
+                    from = i + 1;
+                }
+            }
+            out.write(buf, from, end - from);
+            out.write('"');
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private final String source;
+    private final int minYear;
+    private final int maxYear;
+    private final Quarantine quarantine;
+
+    private long files;
+    private long rowsAccepted;
+    private long quotedRows;
+    private long badQuoting;
+    private long wrongFieldCount;
+    private long badYear;
+    private long outOfRange;
+    private final long[] missing = new long[EarningsAggregate.Measure.values().length];
+
+    // quarantine may be null to only count
+    public DataQuality(String source, int minYear, int maxYear, Quarantine quarantine) {
+        this.source = source;
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.quarantine = quarantine;
+    }
+
+    // Empty counters for one file of this run, sharing the quarantine
+    public DataQuality forSource(String source) {
+        return new DataQuality(source, minYear, maxYear, quarantine);
+    }
+
+    // Records the tokenizer's current row after EarningsAggregate.accept
+    // turned it down, checking in the same order as accept does
+    public void reject(CsvTokenizer row) throws IOException {
+        String reason;
+        if (row.hasQuoteError()) {
+            badQuoting++;
+            reason = "bad quoting";
+        } else if (row.fieldCount() != EarningsAggregate.FIELD_COUNT) {
+            wrongFieldCount++;
+            reason = "expected " + EarningsAggregate.FIELD_COUNT + " fields, found " + row.fieldCount();
+        } else {
+            int year = row.parseInt(EarningsAggregate.RELEASE_YEAR_COLUMN);
+            if (year == CsvTokenizer.NOT_AN_INT) {
+                badYear++;
+                reason = "release year is not a number";
+            } else {
+                outOfRange++;
+                reason = "release year " + year + " outside " + minYear + "-" + maxYear;
+            }
+        }
+        if (quarantine != null) {
+            quarantine.write(source, row.lineNumber(), reason, row.buffer(), row.rowStart(), row.rowEnd());
+        }
+    }
+
+    // Takes the remaining counts once the file is done
+    public void finish(CsvTokenizer tokenizer, EarningsAggregate aggregate) {
+        files++;
+        quotedRows += tokenizer.quotedRows();
+        rowsAccepted += aggregate.getRowsAccepted();
+        for (EarningsAggregate.Measure measure : EarningsAggregate.Measure.values()) {
+            missing[measure.ordinal()] += aggregate.getMissingValues(measure);
+        }
+    }
+
+    public void merge(DataQuality other) {
+        files += other.files;
+        rowsAccepted += other.rowsAccepted;
+        quotedRows += other.quotedRows;
+        badQuoting += other.badQuoting;
+        wrongFieldCount += other.wrongFieldCount;
+        badYear += other.badYear;
+        outOfRange += other.outOfRange;
+        for (int m = 0; m < missing.length; m++) {
+            missing[m] += other.missing[m];
+        }
+    }
+
+    public long getRowsRejected() {
+        return badQuoting + wrongFieldCount + badYear + outOfRange;
+    }
+
+    // Plain text summary, one count per line
+    public void writeReport(Writer out) throws IOException {
+        out.write(String.format(Locale.ROOT, "Data quality: %,d rows read from %d file(s), %,d accepted\n",
+                rowsAccepted + getRowsRejected(), files, rowsAccepted));
+        out.write(String.format(Locale.ROOT, "  %-40s %,12d\n", "Rows with quoted fields", quotedRows));
+        out.write(String.format(Locale.ROOT, "  %-40s %,12d\n", "Rejected: bad quoting", badQuoting));
+        out.write(String.format(Locale.ROOT, "  %-40s %,12d\n", "Rejected: wrong number of fields", wrongFieldCount));
+        out.write(String.format(Locale.ROOT, "  %-40s %,12d\n", "Rejected: release year not a number", badYear));
+        out.write(String.format(Locale.ROOT, "  %-40s %,12d\n",
+                "Rejected: release year outside " + minYear + "-" + maxYear, outOfRange));
+        for (EarningsAggregate.Measure measure : EarningsAggregate.Measure.values()) {
+            out.write(String.format(Locale.ROOT, "  %-40s %,12d\n",
+                    "Accepted, " + measure.getLabel() + " missing", missing[measure.ordinal()]));
+        }
+        if (quarantine != null) {
+            out.write(String.format(Locale.ROOT, "  %,d rejected rows written to %s\n",
+                    quarantine.getRows(), quarantine.getFile()));
+        }
+    }
+}
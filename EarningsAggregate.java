@@ -0,0 +1,500 @@
+import java.nio.charset.Charset;
+import java.util.*;
+
+// Single-pass aggregation over the ESport_Earnings schema. Every accepted row
+// updates, for each group-by column, that group's row count and the count,
+// sum, min and max of every numeric column. Any (group by, aggregate) view
+// can then be read back without touching the file again, and partial
+// aggregates from parallel chunks merge into one.
+public class EarningsAggregate {
+
+    // Column layout of the ESport_Earnings export
+    public static final int ID_COLUMN = 0;
+    public static final int TOTAL_MONEY_COLUMN = 1;
+    public static final int GAME_NAME_COLUMN = 2;
+    public static final int GENRE_COLUMN = 3;
+    public static final int PLAYER_NO_COLUMN = 4;
+    public static final int TOURNAMENT_NO_COLUMN = 5;
+    public static final int TOP_COUNTRY_COLUMN = 6;
+    public static final int TOP_COUNTRY_EARNINGS_COLUMN = 7;
+    public static final int RELEASE_YEAR_COLUMN = 8;
+    public static final int FIELD_COUNT = 9;
+
+    // Release years the analysis has always been limited to
+    public static final int DEFAULT_MIN_YEAR = 1993;
+    public static final int DEFAULT_MAX_YEAR = 2020;
+
+    public enum GroupBy {
+        RELEASE_YEAR("Release Year", RELEASE_YEAR_COLUMN),
+        GENRE("Genre", GENRE_COLUMN),
+        TOP_COUNTRY("Top Country", TOP_COUNTRY_COLUMN),
+        GAME_NAME("Game", GAME_NAME_COLUMN);
+
+        private final String label;
+        private final int column;
+
+        GroupBy(String label, int column) {
+            this.label = label;
+            this.column = column;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum Measure {
+        TOTAL_MONEY("Prize Money", TOTAL_MONEY_COLUMN),
+        PLAYERS("Players", PLAYER_NO_COLUMN),
+        TOURNAMENTS("Tournaments", TOURNAMENT_NO_COLUMN),
+        TOP_COUNTRY_EARNINGS("Top Country Earnings", TOP_COUNTRY_EARNINGS_COLUMN);
+
+        private final String label;
+        private final int column;
+
+        Measure(String label, int column) {
+            this.label = label;
+            this.column = column;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum Function {
+        COUNT("Number of Games"),
+        SUM("Total"),
+        AVG("Average"),
+        MIN("Minimum"),
+        MAX("Maximum");
+
+        private final String label;
+
+        Function(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Measure[] MEASURES = Measure.values();
+
+    // Running totals of one group
+    static class GroupStats {
+        long rows;
+        final long[] n = new long[MEASURES.length];
+        final double[] sum = new double[MEASURES.length];
+        final double[] min = new double[MEASURES.length];
+        final double[] max = new double[MEASURES.length];
+
+        GroupStats() {
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        void add(double[] values) {
+            rows++;
+            for (int m = 0; m < values.length; m++) {
+                double v = values[m];
+                if (v == v) { // skip NaN, i.e. unparseable cells
+                    n[m]++;
+                    sum[m] += v;
+                    if (v < min[m]) {
+                        min[m] = v;
+                    }
+                    if (v > max[m]) {
+                        max[m] = v;
+                    }
+                }
+            }
+        }
+
+        void merge(GroupStats other) {
+            rows += other.rows;
+            for (int m = 0; m < n.length; m++) {
+                n[m] += other.n[m];
+                sum[m] += other.sum[m];
+                min[m] = Math.min(min[m], other.min[m]);
+                max[m] = Math.max(max[m], other.max[m]);
+            }
+        }
+
+        // The measure is ignored for COUNT and may be null there
+        double value(Function function, Measure measure) {
+            if (function == Function.COUNT) {
+                return rows;
+            }
+            int m = measure.ordinal();
+            switch (function) {
+                case SUM:
+                    return sum[m];
+                case AVG:
+                    return n[m] > 0 ? sum[m] / n[m] : Double.NaN;
+                case MIN:
+                    return n[m] > 0 ? min[m] : Double.NaN;
+                case MAX:
+                    return n[m] > 0 ? max[m] : Double.NaN;
+                default:
+                    throw new IllegalArgumentException("Unknown function " + function);
+            }
+        }
+    }
+
+    // Groups of one text column, indexed by dictionary code
+    private static class CategoryGroups {
+        final FieldDictionary dictionary;
+        final List<GroupStats> stats = new ArrayList<>();
+
+        CategoryGroups(FieldDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        GroupStats get(int code) {
+            while (stats.size() <= code) {
+                stats.add(new GroupStats());
+            }
+            return stats.get(code);
+        }
+    }
+
+    private final int minYear;
+    private final int maxYear;
+    private final Charset charset;
+    private final GroupStats[] yearStats;
+    private final EnumMap<GroupBy, CategoryGroups> categories = new EnumMap<>(GroupBy.class);
+    private final CategoryGroups[] categoryGroups;
+    private final int[] categoryColumns;
+    private final double[] rowValues = new double[MEASURES.length];
+    private final int[] rowCodes = new int[EarningsTable.TEXT_COLUMNS.length];
+    private long rowsAccepted;
+    private long rowsMalformed;
+    private long rowsBadYear;
+    private long rowsOutOfRange;
+
+    public EarningsAggregate(int minYear, int maxYear, Charset charset) {
+        this(minYear, maxYear, charset, null);
+    }
+
+    // dictionaries, if given, are shared with an EarningsTable (one per
+    // EarningsTable.TEXT_COLUMNS entry) so its codes can be used directly
+    private EarningsAggregate(int minYear, int maxYear, Charset charset, FieldDictionary[] dictionaries) {
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.charset = charset;
+        this.yearStats = new GroupStats[maxYear - minYear + 1];
+
+        // Flat copies for the per-row loop, in EarningsTable.TEXT_COLUMNS order
+        categoryGroups = new CategoryGroups[EarningsTable.TEXT_COLUMNS.length];
+        categoryColumns = new int[categoryGroups.length];
+        for (int t = 0; t < categoryGroups.length; t++) {
+            GroupBy groupBy = EarningsTable.TEXT_COLUMNS[t];
+            FieldDictionary dictionary = dictionaries != null ? dictionaries[t] : new FieldDictionary(charset);
+            categoryGroups[t] = new CategoryGroups(dictionary);
+            categoryColumns[t] = groupBy.column;
+            categories.put(groupBy, categoryGroups[t]);
+        }
+    }
+
+    // Aggregates the rows of a table whose release year is in [minYear, maxYear]
+    public static EarningsAggregate of(EarningsTable table, int minYear, int maxYear) {
+        return of(table, minYear, maxYear, null);
+    }
+
+    // Same, limited to the rows set in selection (see EarningsIndex); null selects every row
+    public static EarningsAggregate of(EarningsTable table, int minYear, int maxYear, long[] selection) {
+        FieldDictionary[] dictionaries = new FieldDictionary[EarningsTable.TEXT_COLUMNS.length];
+        for (int t = 0; t < dictionaries.length; t++) {
+            dictionaries[t] = table.dictionary(t);
+        }
+        EarningsAggregate aggregate = new EarningsAggregate(minYear, maxYear, table.getCharset(), dictionaries);
+        aggregate.addRows(table, 0, table.getRowCount(), selection);
+        return aggregate;
+    }
+
+    // Adds rows [from, to) of the table this aggregate was created from with
+    // of(), e.g. rows that were appended to the file since the last update
+    public void addRows(EarningsTable table, int from, int to) {
+        addRows(table, from, to, null);
+    }
+
+    // Same, skipping rows whose bit is clear in selection; null selects every row
+    public void addRows(EarningsTable table, int from, int to, long[] selection) {
+        int[][] codes = new int[categoryGroups.length][];
+        for (int t = 0; t < codes.length; t++) {
+            if (table.dictionary(t) != categoryGroups[t].dictionary) {
+                throw new IllegalArgumentException("Table does not share this aggregate's dictionaries");
+            }
+            codes[t] = table.codes(t);
+        }
+        int[] years = table.releaseYears();
+        double[][] measures = new double[MEASURES.length][];
+        for (int m = 0; m < MEASURES.length; m++) {
+            measures[m] = table.measure(MEASURES[m]);
+        }
+
+        double[] values = rowValues;
+        int[] rowCodes = this.rowCodes;
+        int row = selection == null ? from : EarningsIndex.nextSetBit(selection, from, to);
+        while (row < to) {
+            int year = years[row];
+            if (year < minYear || year > maxYear) {
+                reject(year);
+            } else {
+                for (int m = 0; m < values.length; m++) {
+                    values[m] = measures[m][row];
+                }
+                for (int t = 0; t < rowCodes.length; t++) {
+                    rowCodes[t] = codes[t][row];
+                }
+                add(year, values, rowCodes);
+            }
+            row = selection == null ? row + 1 : EarningsIndex.nextSetBit(selection, row + 1, to);
+        }
+    }
+
+    // True when a row has exactly FIELD_COUNT fields and valid quoting. An
+    // extra field usually means an unquoted comma shifted the columns, so
+    // the release year would be read from the wrong one.
+    static boolean isWellFormed(CsvTokenizer row) {
+        return row.fieldCount() == FIELD_COUNT && !row.hasQuoteError();
+    }
+
+    // Adds the tokenizer's current row. Malformed rows or ones with a release
+    // year outside [minYear, maxYear] are skipped and false is returned.
+    public boolean accept(CsvTokenizer row) {
+        if (!isWellFormed(row)) {
+            rowsMalformed++;
+            return false;
+        }
+        int year = row.parseInt(RELEASE_YEAR_COLUMN);
+        if (year < minYear || year > maxYear) {
+            reject(year);
+            return false;
+        }
+
+        for (int m = 0; m < MEASURES.length; m++) {
+            rowValues[m] = row.parseDouble(MEASURES[m].column);
+        }
+        byte[] buf = row.buffer();
+        for (int i = 0; i < categoryGroups.length; i++) {
+            int column = categoryColumns[i];
+            rowCodes[i] = categoryGroups[i].dictionary.codeOf(buf, row.fieldStart(column), row.fieldEnd(column));
+        }
+        add(year, rowValues, rowCodes);
+        return true;
+    }
+
+    // Counts a row left out because of its release year
+    private void reject(int year) {
+        if (year == CsvTokenizer.NOT_AN_INT) {
+            rowsBadYear++;
+        } else {
+            rowsOutOfRange++;
+        }
+    }
+
+    // Adds one row given its measure values and text column codes
+    private void add(int year, double[] values, int[] codes) {
+        int index = year - minYear;
+        if (yearStats[index] == null) {
+            yearStats[index] = new GroupStats();
+        }
+        yearStats[index].add(values);
+
+        for (int i = 0; i < categoryGroups.length; i++) {
+            categoryGroups[i].get(codes[i]).add(values);
+        }
+        rowsAccepted++;
+    }
+
+    // Folds a partial aggregate (e.g. from another chunk) into this one
+    public void merge(EarningsAggregate other) {
+        for (int i = 0; i < other.yearStats.length; i++) {
+            GroupStats stats = other.yearStats[i];
+            if (stats == null) {
+                continue;
+            }
+            int index = other.minYear + i - minYear;
+            if (index < 0 || index >= yearStats.length) {
+                continue;
+            }
+            if (yearStats[index] == null) {
+                yearStats[index] = new GroupStats();
+            }
+            yearStats[index].merge(stats);
+        }
+        for (Map.Entry<GroupBy, CategoryGroups> e : other.categories.entrySet()) {
+            CategoryGroups mine = categories.get(e.getKey());
+            CategoryGroups theirs = e.getValue();
+            for (int code = 0; code < theirs.stats.size(); code++) {
+                mine.get(mine.dictionary.codeOf(theirs.dictionary, code)).merge(theirs.stats.get(code));
+            }
+        }
+        rowsAccepted += other.rowsAccepted;
+        rowsMalformed += other.rowsMalformed;
+        rowsBadYear += other.rowsBadYear;
+        rowsOutOfRange += other.rowsOutOfRange;
+    }
+
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return maxYear;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public long getRowsAccepted() {
+        return rowsAccepted;
+    }
+
+    // Rows passed to accept() that were not well formed (see isWellFormed)
+    public long getRowsMalformed() {
+        return rowsMalformed;
+    }
+
+    // Rows whose release year is empty or not a number
+    public long getRowsBadYear() {
+        return rowsBadYear;
+    }
+
+    // Rows with a release year outside [minYear, maxYear]
+    public long getRowsOutOfRange() {
+        return rowsOutOfRange;
+    }
+
+    // Accepted rows whose cell for the measure was empty or not numeric
+    public long getMissingValues(Measure measure) {
+        long present = 0;
+        for (GroupStats stats : yearStats) {
+            if (stats != null) {
+                present += stats.n[measure.ordinal()];
+            }
+        }
+        return rowsAccepted - present;
+    }
+
+    public boolean isEmpty() {
+        return rowsAccepted == 0;
+    }
+
+    // Non-empty groups of one column in their natural order: years ascending,
+    // other columns in order of first appearance. Used to stream every
+    // statistic without sorting or building a map.
+    Groups groups(GroupBy groupBy) {
+        if (groupBy == GroupBy.RELEASE_YEAR) {
+            int[] ids = new int[yearStats.length];
+            int size = 0;
+            for (int i = 0; i < yearStats.length; i++) {
+                if (yearStats[i] != null) {
+                    ids[size++] = i;
+                }
+            }
+            return new Groups(groupBy, Arrays.copyOf(ids, size));
+        }
+        CategoryGroups groups = categories.get(groupBy);
+        int[] ids = new int[groups.stats.size()];
+        int size = 0;
+        for (int code = 0; code < ids.length; code++) {
+            if (groups.stats.get(code).rows > 0) {
+                ids[size++] = code;
+            }
+        }
+        return new Groups(groupBy, Arrays.copyOf(ids, size));
+    }
+
+    // Read-only cursor over the groups returned by groups(GroupBy)
+    final class Groups {
+        private final GroupBy groupBy;
+        private final int[] ids;
+
+        private Groups(GroupBy groupBy, int[] ids) {
+            this.groupBy = groupBy;
+            this.ids = ids;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        String key(int i) {
+            if (groupBy == GroupBy.RELEASE_YEAR) {
+                return String.valueOf(minYear + ids[i]);
+            }
+            return categories.get(groupBy).dictionary.get(ids[i]);
+        }
+
+        GroupStats stats(int i) {
+            if (groupBy == GroupBy.RELEASE_YEAR) {
+                return yearStats[ids[i]];
+            }
+            return categories.get(groupBy).stats.get(ids[i]);
+        }
+    }
+
+    // Computes one view. Years come out in ascending order, other groups by
+    // descending value. Groups without rows or without a value for the measure
+    // are left out.
+    public LinkedHashMap<String, Double> view(GroupBy groupBy, Function function, Measure measure) {
+        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+        if (groupBy == GroupBy.RELEASE_YEAR) {
+            for (int i = 0; i < yearStats.length; i++) {
+                if (yearStats[i] != null) {
+                    double value = yearStats[i].value(function, measure);
+                    if (value == value) {
+                        result.put(String.valueOf(minYear + i), value);
+                    }
+                }
+            }
+            return result;
+        }
+
+        final CategoryGroups groups = categories.get(groupBy);
+        final double[] values = new double[groups.stats.size()];
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < values.length; code++) {
+            GroupStats stats = groups.stats.get(code);
+            values[code] = stats.value(function, measure);
+            // Codes below a selected one get stats even when a filter skipped all their rows
+            if (stats.rows > 0 && values[code] == values[code]) {
+                codes.add(code);
+            }
+        }
+        Collections.sort(codes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byValue = Double.compare(values[b], values[a]);
+                return byValue != 0 ? byValue : groups.dictionary.get(a).compareTo(groups.dictionary.get(b));
+            }
+        });
+        for (Integer code : codes) {
+            result.put(groups.dictionary.get(code), values[code]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,583 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+// Headless entry point for batch servers. Aggregates one or more earnings
+// CSVs and writes the chosen view in the same CSV layout as the GUI export,
+// without loading any AWT or Swing classes.
+//
+//   java EarningsBatch [options] <file or glob>...
+//
+//   --group-by year|genre|country|game   (default year)
+//   --aggregate count|sum:M|avg:M|min:M|max:M, M = money|players|tournaments|top-earnings
+//   --years 1993-2020                    release years to keep
+//   --out <path>|-                       output file, default stdout
+//   --format csv|jsonl|columnar          output format, default csv
+//   --all                                every statistic of every group instead of one view
+//   --gzip                               gzip the output
+//   --threads N                          files parsed in parallel, default #cores
+//   --chart <file.png|file.svg>          also render the chosen view as a chart
+//   --charts <dir>                       render every view as a chart into dir
+//   --chart-format png|svg               format for --charts, default png
+//   --size 800x500                       chart size in pixels
+//   --theme light|dark                   chart colors, default light
+//   --stats                              print read/parse timings and rejected rows
+//   --sketch                             approximate report in bounded memory instead
+//                                        of a view: distinct games per year, top
+//                                        countries, prize money quantiles per genre
+//   --top N                              countries in the --sketch report, default 10
+//   --quality                            print a data-quality report: rows rejected
+//                                        and why, quoted rows, missing numbers
+//   --quarantine <file>                  write rejected rows to a CSV with their
+//                                        file, line and reason
+//
+// With --chart or --charts and no --out, only the charts are written.
+// Charts are rendered headless, so no display is needed.
+// Globs such as 'exports/*.csv' or 'exports/**/*.csv' are expanded here, so
+// they work even when the shell passes them through unexpanded; a directory
+// stands for the CSV files directly inside it.
+public class EarningsBatch {
+
+    private static final Charset CSV_CHARSET = Charset.defaultCharset();
+
+    private EarningsAggregate.GroupBy groupBy = EarningsAggregate.GroupBy.RELEASE_YEAR;
+    private EarningsAggregate.Function function = EarningsAggregate.Function.COUNT;
+    private EarningsAggregate.Measure measure = EarningsAggregate.Measure.TOTAL_MONEY;
+    private int minYear = EarningsAggregate.DEFAULT_MIN_YEAR;
+    private int maxYear = EarningsAggregate.DEFAULT_MAX_YEAR;
+    private String output;
+    private EarningsExporter.Format format = EarningsExporter.Format.CSV;
+    private boolean allStatistics;
+    private boolean gzip;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final List<String> inputs = new ArrayList<>();
+    private File chartFile;
+    private File chartDirectory;
+    private String chartFormat = "png";
+    private int chartWidth = 800;
+    private int chartHeight = 500;
+    private String theme = "light";
+    private boolean stats;
+    private boolean sketch;
+    private int topK = 10;
+    private boolean quality;
+    private File quarantineFile;
+
+    // Files at least this large are sketched chunk by chunk on all threads
+    private static final long PARALLEL_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        EarningsBatch batch = new EarningsBatch();
+        try {
+            batch.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+
+        try {
+            batch.run();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: java EarningsBatch [--group-by year|genre|country|game]"
+                + " [--aggregate count|sum:M|avg:M|min:M|max:M] [--years FROM-TO]"
+                + " [--out FILE|-] [--format csv|jsonl|columnar] [--all] [--gzip] [--threads N]"
+                + " [--chart FILE.png|FILE.svg] [--charts DIR] [--chart-format png|svg] [--size WxH]"
+                + " [--theme light|dark] [--stats] [--sketch] [--top N] [--quality] [--quarantine FILE]"
+                + " <file or glob>...");
+        System.err.println("       M = money|players|tournaments|top-earnings");
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                inputs.add(arg);
+                continue;
+            }
+            // Flags without a value
+            if (arg.equals("--all")) {
+                allStatistics = true;
+                continue;
+            }
+            if (arg.equals("--gzip")) {
+                gzip = true;
+                continue;
+            }
+            if (arg.equals("--stats")) {
+                stats = true;
+                continue;
+            }
+            if (arg.equals("--sketch")) {
+                sketch = true;
+                continue;
+            }
+            if (arg.equals("--quality")) {
+                quality = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--group-by":
+                    groupBy = parseGroupBy(value);
+                    break;
+                case "--aggregate":
+                    parseAggregate(value);
+                    break;
+                case "--years":
+                    parseYears(value);
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                case "--format":
+                    format = parseFormat(value);
+                    break;
+                case "--chart":
+                    chartFile = new File(value);
+                    break;
+                case "--charts":
+                    chartDirectory = new File(value);
+                    break;
+                case "--chart-format":
+                    chartFormat = value.toLowerCase(Locale.ROOT);
+                    if (!chartFormat.equals("png") && !chartFormat.equals("svg")) {
+                        throw new IllegalArgumentException("unknown chart format: " + value);
+                    }
+                    break;
+                case "--size":
+                    parseSize(value);
+                    break;
+                case "--theme":
+                    theme = value.toLowerCase(Locale.ROOT);
+                    if (!theme.equals("light") && !theme.equals("dark")) {
+                        throw new IllegalArgumentException("unknown theme: " + value);
+                    }
+                    break;
+                case "--quarantine":
+                    quarantineFile = new File(value);
+                    break;
+                case "--top":
+                    try {
+                        topK = Math.max(1, Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad top count: " + value);
+                    }
+                    break;
+                case "--threads":
+                    try {
+                        threads = Math.max(1, Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad thread count: " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("no input files");
+        }
+        if (sketch && (allStatistics || format != EarningsExporter.Format.CSV
+                || chartFile != null || chartDirectory != null)) {
+            throw new IllegalArgumentException("--sketch writes its own CSV report and cannot be combined"
+                    + " with --all, --format or charts");
+        }
+        if (sketch && (quality || quarantineFile != null)) {
+            throw new IllegalArgumentException("--quality and --quarantine cannot be combined with --sketch");
+        }
+        if (output == null && chartFile == null && chartDirectory == null) {
+            output = "-";
+        }
+    }
+
+    private void parseSize(String value) {
+        String[] parts = value.toLowerCase(Locale.ROOT).split("x", 2);
+        try {
+            chartWidth = Integer.parseInt(parts[0].trim());
+            chartHeight = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("bad chart size: " + value);
+        }
+        if (chartWidth < 100 || chartHeight < 100) {
+            throw new IllegalArgumentException("chart size must be at least 100x100: " + value);
+        }
+    }
+
+    static EarningsAggregate.GroupBy parseGroupBy(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "year":
+                return EarningsAggregate.GroupBy.RELEASE_YEAR;
+            case "genre":
+                return EarningsAggregate.GroupBy.GENRE;
+            case "country":
+                return EarningsAggregate.GroupBy.TOP_COUNTRY;
+            case "game":
+                return EarningsAggregate.GroupBy.GAME_NAME;
+            default:
+                throw new IllegalArgumentException("unknown group-by column: " + value);
+        }
+    }
+
+    static EarningsExporter.Format parseFormat(String value) {
+        for (EarningsExporter.Format candidate : EarningsExporter.Format.values()) {
+            if (candidate.getExtension().equalsIgnoreCase(value) || candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("unknown format: " + value);
+    }
+
+    static EarningsAggregate.Measure parseMeasure(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "money":
+                return EarningsAggregate.Measure.TOTAL_MONEY;
+            case "players":
+                return EarningsAggregate.Measure.PLAYERS;
+            case "tournaments":
+                return EarningsAggregate.Measure.TOURNAMENTS;
+            case "top-earnings":
+                return EarningsAggregate.Measure.TOP_COUNTRY_EARNINGS;
+            default:
+                throw new IllegalArgumentException("unknown measure: " + value);
+        }
+    }
+
+    private void parseAggregate(String value) {
+        String[] parts = value.toLowerCase(Locale.ROOT).split(":", 2);
+        try {
+            function = EarningsAggregate.Function.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown aggregate: " + value);
+        }
+        if (function != EarningsAggregate.Function.COUNT) {
+            if (parts.length < 2) {
+                throw new IllegalArgumentException(parts[0] + " needs a measure, e.g. " + parts[0] + ":money");
+            }
+            measure = parseMeasure(parts[1]);
+        }
+    }
+
+    private void parseYears(String value) {
+        String[] parts = value.split("-", 2);
+        try {
+            minYear = Integer.parseInt(parts[0].trim());
+            maxYear = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : minYear;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad year range: " + value);
+        }
+        if (maxYear < minYear) {
+            throw new IllegalArgumentException("bad year range: " + value);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (String input : inputs) {
+            files.addAll(expand(input));
+        }
+        if (files.isEmpty()) {
+            throw new IOException("no files match " + inputs);
+        }
+        if (sketch) {
+            runSketch(files);
+            return;
+        }
+
+        DataQuality.Quarantine quarantine = quarantineFile != null
+                ? new DataQuality.Quarantine(quarantineFile, CSV_CHARSET) : null;
+        DataQuality totalQuality = new DataQuality("", minYear, maxYear, quarantine);
+        EarningsAggregate total;
+        try {
+            total = aggregateAll(files, quality || quarantine != null ? totalQuality : null);
+        } finally {
+            if (quarantine != null) {
+                quarantine.close();
+            }
+        }
+
+        if (output != null) {
+            writeOutput(total);
+        }
+        System.err.println("Aggregated " + total.getRowsAccepted() + " rows from " + files.size() + " file(s)");
+        if (stats) {
+            EarningsMetrics metrics = EarningsMetrics.get();
+            System.err.println(String.format("Read %.1f ms, parse and aggregate %.1f ms over %,d rows, %.1f MB",
+                    metrics.getReadMillis(), metrics.getParseMillis(), metrics.getRowsRead(),
+                    metrics.getBytesRead() / 1048576.0));
+            System.err.println(String.format("Rejected: %,d malformed, %,d bad year, %,d out of range",
+                    total.getRowsMalformed(), total.getRowsBadYear(), total.getRowsOutOfRange()));
+        }
+        if (quality) {
+            Writer report = new OutputStreamWriter(System.err, CSV_CHARSET);
+            totalQuality.writeReport(report);
+            report.flush();
+        } else if (quarantine != null) {
+            System.err.println("Wrote " + quarantine.getRows() + " rejected rows to " + quarantineFile);
+        }
+
+        if (chartFile != null || chartDirectory != null) {
+            renderCharts(total);
+        }
+    }
+
+    private void runSketch(List<File> files) throws IOException, InterruptedException {
+        EarningsSketch total = sketchAll(files);
+        if (output.equals("-")) {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(System.out, 1 << 16) : null;
+            Writer writer = new OutputStreamWriter(compressed != null ? compressed : System.out, CSV_CHARSET);
+            total.writeReport(writer, topK);
+            writer.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+            System.out.flush();
+        } else {
+            try (Writer writer = Channels.newWriter(EarningsExporter.openFile(new File(output), gzip),
+                    CSV_CHARSET.newEncoder().onUnmappableCharacter(CodingErrorAction.REPLACE), 1 << 16)) {
+                total.writeReport(writer, topK);
+            }
+        }
+        System.err.println("Sketched " + total.getRowsAccepted() + " rows from " + files.size() + " file(s)");
+    }
+
+    // Large files are cut into chunks sketched in parallel; the others are
+    // streamed one per task. All sketches are merged in input order.
+    private EarningsSketch sketchAll(List<File> files) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<EarningsSketch>> results = new ArrayList<>();
+            for (final File file : files) {
+                if (file.length() >= PARALLEL_THRESHOLD_BYTES && threads > 1) {
+                    results.add(new ParallelCsvIngest(file, CSV_CHARSET, threads).start(pool,
+                            new ParallelCsvIngest.Partial<EarningsSketch>() {
+                                @Override
+                                public EarningsSketch create() {
+                                    return new EarningsSketch(minYear, maxYear, CSV_CHARSET);
+                                }
+
+                                @Override
+                                public void add(EarningsSketch partial, CsvTokenizer row) {
+                                    partial.accept(row);
+                                }
+
+                                @Override
+                                public void merge(EarningsSketch into, EarningsSketch next) {
+                                    into.merge(next);
+                                }
+                            }));
+                } else {
+                    results.add(pool.submit(new Callable<EarningsSketch>() {
+                        @Override
+                        public EarningsSketch call() throws IOException {
+                            return sketch(file);
+                        }
+                    }));
+                }
+            }
+
+            EarningsSketch total = new EarningsSketch(minYear, maxYear, CSV_CHARSET);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    total.merge(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    throw new IOException(files.get(i) + ": " + cause.getMessage(), cause);
+                }
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private EarningsSketch sketch(File file) throws IOException {
+        EarningsSketch sketch = new EarningsSketch(minYear, maxYear, CSV_CHARSET);
+        CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+        try {
+            // Skip header line
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                sketch.accept(tokenizer);
+            }
+        } finally {
+            tokenizer.close();
+        }
+        return sketch;
+    }
+
+    private void renderCharts(EarningsAggregate total) throws IOException, InterruptedException {
+        // Must be set before the first AWT class loads
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        ChartRenderer renderer = new ChartRenderer(chartWidth, chartHeight,
+                theme.equals("dark") ? ChartRenderer.Theme.DARK : ChartRenderer.Theme.LIGHT);
+        if (chartFile != null) {
+            renderer.render(total, groupBy, function, measure, chartFile);
+            System.err.println("Wrote chart " + chartFile);
+        }
+        if (chartDirectory != null) {
+            List<File> charts = renderer.renderAllViews(total, chartDirectory, chartFormat, threads);
+            System.err.println("Wrote " + charts.size() + " charts to " + chartDirectory);
+        }
+    }
+
+    private void writeOutput(EarningsAggregate total) throws IOException {
+        if (output.equals("-")) {
+            // stdout stays open; only the gzip trailer has to be written
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(System.out, 1 << 16) : null;
+            write(Channels.newChannel(compressed != null ? compressed : System.out), total);
+            if (compressed != null) {
+                compressed.finish();
+            }
+            System.out.flush();
+        } else {
+            try (WritableByteChannel channel = EarningsExporter.openFile(new File(output), gzip)) {
+                write(channel, total);
+            }
+        }
+    }
+
+    private void write(WritableByteChannel channel, EarningsAggregate total) throws IOException {
+        if (allStatistics) {
+            EarningsExporter.writeAll(channel, format, total, groupBy);
+        } else {
+            EarningsExporter.writeView(channel, format, total, groupBy, function, measure);
+        }
+    }
+
+    // Parses the files on a fixed pool, each into its own aggregate, and
+    // merges them in input order. With quality set, each file is also checked
+    // and its counts are merged into quality.
+    private EarningsAggregate aggregateAll(List<File> files, DataQuality quality)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            List<Future<EarningsAggregate>> results = new ArrayList<>();
+            final List<DataQuality> checks = new ArrayList<>();
+            for (final File file : files) {
+                final DataQuality check = quality != null ? quality.forSource(file.getPath()) : null;
+                checks.add(check);
+                results.add(pool.submit(new Callable<EarningsAggregate>() {
+                    @Override
+                    public EarningsAggregate call() throws IOException {
+                        return aggregate(file, check);
+                    }
+                }));
+            }
+
+            EarningsAggregate total = new EarningsAggregate(minYear, maxYear, CSV_CHARSET);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    total.merge(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    throw new IOException(files.get(i) + ": " + cause.getMessage(), cause);
+                }
+                if (quality != null) {
+                    quality.merge(checks.get(i));
+                }
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Streams one file straight into an aggregate; memory stays flat however large it is
+    private EarningsAggregate aggregate(File file, DataQuality quality) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        EarningsAggregate aggregate = new EarningsAggregate(minYear, maxYear, CSV_CHARSET);
+        CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+        try {
+            // Skip header line
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                rows++;
+                if (!aggregate.accept(tokenizer) && quality != null) {
+                    quality.reject(tokenizer);
+                }
+            }
+        } finally {
+            tokenizer.close();
+        }
+        if (quality != null) {
+            quality.finish(tokenizer, aggregate);
+        }
+
+        // Parsing and aggregating happen in the same pass, so they are timed together
+        long elapsed = System.nanoTime() - start;
+        long readNanos = tokenizer.readNanos();
+        EarningsMetrics metrics = EarningsMetrics.get();
+        metrics.recordIngest(file.getName(), tokenizer.bytesConsumed(), rows, aggregate.getRowsMalformed(),
+                readNanos, elapsed - readNanos, false);
+        metrics.countRows(aggregate.getRowsAccepted(), aggregate.getRowsBadYear(), aggregate.getRowsOutOfRange());
+        return aggregate;
+    }
+
+    // Expands a plain path, a directory (its *.csv files) or a glob into the
+    // matching regular files, sorted by path
+    static List<File> expand(String input) throws IOException {
+        int firstGlob = indexOfGlobChar(input);
+        if (firstGlob < 0) {
+            File file = new File(input);
+            if (file.isDirectory()) {
+                return expand(new File(file, "*.csv").getPath());
+            }
+            if (!file.isFile()) {
+                throw new FileNotFoundException(input);
+            }
+            return Collections.singletonList(file);
+        }
+
+        // Walk from the last directory before the first wildcard
+        int split = Math.max(input.lastIndexOf('/', firstGlob), input.lastIndexOf(File.separatorChar, firstGlob));
+        Path base = Paths.get(split >= 0 ? input.substring(0, split + 1) : ".");
+        final String pattern = split >= 0 ? input.substring(split + 1) : input;
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        final Path root = base;
+        final List<File> matches = new ArrayList<>();
+        int depth = pattern.contains("**") || pattern.contains("/") ? Integer.MAX_VALUE : 1;
+
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && matcher.matches(root.relativize(path))) {
+                    matches.add(path.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static int indexOfGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
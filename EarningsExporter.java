@@ -0,0 +1,408 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+// Writes aggregates as CSV, JSON Lines or a compact columnar binary file.
+// Shared by the Swing export button and the headless batch runner so both
+// produce identical files.
+//
+// Either the current chart view (one value per group) or every statistic of
+// every group can be exported. Rows are streamed straight from the aggregate
+// into a buffered channel, so nothing the size of the output is built up in
+// memory.
+//
+// The columnar format (.ebgx) is little-endian: magic "EBGX", version, row
+// count and column count, then per column its UTF-8 name and a type byte
+// (0 text, 1 long, 2 double), followed by the columns one after another.
+// Text values are a length and UTF-8 bytes; doubles are NaN when missing.
+public class EarningsExporter {
+
+    public enum Format {
+        CSV("CSV", "csv"),
+        JSON_LINES("JSON Lines", "jsonl"),
+        COLUMNAR("Columnar binary", "ebgx");
+
+        private final String label;
+        private final String extension;
+
+        Format(String label, String extension) {
+            this.label = label;
+            this.extension = extension;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final int COLUMNAR_MAGIC = 0x58474245; // "EBGX"
+    private static final int COLUMNAR_VERSION = 1;
+    private static final byte TEXT = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // CSV keeps the platform charset of the original FileWriter export
+    private static final Charset CSV_CHARSET = Charset.defaultCharset();
+
+    private EarningsExporter() {
+    }
+
+    // Column heading for a view, e.g. "Number of Games" or "Average Players"
+    public static String viewLabel(EarningsAggregate.Function function, EarningsAggregate.Measure measure) {
+        if (function == EarningsAggregate.Function.COUNT) {
+            return function.getLabel();
+        }
+        return function.getLabel() + " " + measure.getLabel();
+    }
+
+    // Opens file for writing, gzip-compressed if asked. The caller closes it.
+    public static WritableByteChannel openFile(File file, boolean gzip) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (!gzip) {
+            return channel;
+        }
+        return Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    // Writes one view: the group and its value, ordered as on the chart
+    public static void writeView(WritableByteChannel channel, Format format, EarningsAggregate data,
+            EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure) throws IOException {
+        writeView(channel, format, data, groupBy, function, measure, CSV_CHARSET);
+    }
+
+    // Same, with CSV in the given charset instead of the platform one, e.g.
+    // UTF-8 for an HTTP response
+    public static void writeView(WritableByteChannel channel, Format format, EarningsAggregate data,
+            EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure, Charset csvCharset) throws IOException {
+        write(channel, format, new ViewTable(data.view(groupBy, function, measure), groupBy, function, measure),
+                csvCharset);
+    }
+
+    // Writes every statistic of every group: row count, then count, sum,
+    // min, max and average of each numeric column
+    public static void writeAll(WritableByteChannel channel, Format format, EarningsAggregate data,
+            EarningsAggregate.GroupBy groupBy) throws IOException {
+        write(channel, format, new StatsTable(data.groups(groupBy), groupBy), CSV_CHARSET);
+    }
+
+    private static void write(WritableByteChannel channel, Format format, Table table, Charset csvCharset)
+            throws IOException {
+        switch (format) {
+            case CSV: {
+                Writer writer = textWriter(channel, csvCharset);
+                writeCsv(writer, table);
+                writer.flush();
+                break;
+            }
+            case JSON_LINES: {
+                Writer writer = textWriter(channel, StandardCharsets.UTF_8);
+                writeJsonLines(writer, table);
+                writer.flush();
+                break;
+            }
+            case COLUMNAR:
+                writeColumnar(channel, table);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    // Unmappable characters become replacement characters, as with FileWriter
+    private static Writer textWriter(WritableByteChannel channel, Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new BufferedWriter(Channels.newWriter(channel, encoder, BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    private static void writeCsv(Writer writer, Table table) throws IOException {
+        char[] scratch = new char[32];
+        for (int c = 0; c < table.columnCount(); c++) {
+            if (c > 0) {
+                writer.write(',');
+            }
+            writeCsvField(writer, table.heading(c));
+        }
+        writer.write('\n');
+
+        for (int row = 0; row < table.rowCount(); row++) {
+            writeCsvField(writer, table.key(row));
+            for (int c = 1; c < table.columnCount(); c++) {
+                writer.write(',');
+                double value = table.number(row, c);
+                // Missing values are left empty
+                if (value == value) {
+                    writeNumber(writer, table.type(c), value, scratch);
+                }
+            }
+            writer.write('\n');
+        }
+    }
+
+    private static void writeJsonLines(Writer writer, Table table) throws IOException {
+        char[] scratch = new char[32];
+        for (int row = 0; row < table.rowCount(); row++) {
+            writer.write("{\"");
+            writer.write(table.name(0));
+            writer.write("\":");
+            writeJsonString(writer, table.key(row));
+            for (int c = 1; c < table.columnCount(); c++) {
+                writer.write(",\"");
+                writer.write(table.name(c));
+                writer.write("\":");
+                double value = table.number(row, c);
+                if (value == value) {
+                    writeNumber(writer, table.type(c), value, scratch);
+                } else {
+                    writer.write("null");
+                }
+            }
+            writer.write("}\n");
+        }
+    }
+
+    private static void writeColumnar(WritableByteChannel channel, Table table) throws IOException {
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int rows = table.rowCount();
+        int columns = table.columnCount();
+        out.putInt(COLUMNAR_MAGIC).putInt(COLUMNAR_VERSION).putInt(rows).putInt(columns);
+        for (int c = 0; c < columns; c++) {
+            byte[] name = table.name(c).getBytes(StandardCharsets.UTF_8);
+            out = ChannelBuffers.ensureRoom(channel, out, 5 + name.length);
+            out.putInt(name.length).put(name).put(table.type(c));
+        }
+
+        for (int row = 0; row < rows; row++) {
+            byte[] key = table.key(row).getBytes(StandardCharsets.UTF_8);
+            out = ChannelBuffers.ensureRoom(channel, out, 4 + key.length);
+            out.putInt(key.length).put(key);
+        }
+        for (int c = 1; c < columns; c++) {
+            boolean integral = table.type(c) == LONG;
+            for (int row = 0; row < rows; row++) {
+                out = ChannelBuffers.ensureRoom(channel, out, 8);
+                double value = table.number(row, c);
+                if (integral) {
+                    out.putLong((long) value);
+                } else {
+                    out.putDouble(value);
+                }
+            }
+        }
+        ChannelBuffers.flush(channel, out);
+    }
+
+    static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+
+    static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    // Longs as integers, doubles as integers or to the cent (see
+    // NumberText.formatCents); the columnar format keeps them exact
+    private static void writeNumber(Writer writer, byte type, double value, char[] scratch) throws IOException {
+        int length = type == LONG
+                ? NumberText.formatLong((long) value, scratch, scratch.length)
+                : NumberText.formatCents(value, scratch, scratch.length);
+        writer.write(scratch, scratch.length - length, length);
+    }
+
+    // Rows to export. Column 0 is the group name, the others are numbers.
+    private abstract static class Table {
+        abstract int rowCount();
+
+        abstract int columnCount();
+
+        // Machine-readable name used by JSON Lines and the columnar format
+        abstract String name(int column);
+
+        // CSV header
+        abstract String heading(int column);
+
+        abstract byte type(int column);
+
+        abstract String key(int row);
+
+        // Value of a numeric column, NaN when missing
+        abstract double number(int row, int column);
+    }
+
+    private static class ViewTable extends Table {
+        private final String[] keys;
+        private final double[] values;
+        private final String[] names;
+        private final String[] headings;
+        private final byte valueType;
+
+        ViewTable(Map<String, Double> view, EarningsAggregate.GroupBy groupBy,
+                EarningsAggregate.Function function, EarningsAggregate.Measure measure) {
+            keys = view.keySet().toArray(new String[view.size()]);
+            values = new double[keys.length];
+            int i = 0;
+            for (Double value : view.values()) {
+                values[i++] = value;
+            }
+            String valueName = function == EarningsAggregate.Function.COUNT
+                    ? "count"
+                    : function.name().toLowerCase(Locale.ROOT) + "_" + measure.name().toLowerCase(Locale.ROOT);
+            names = new String[] {groupBy.name().toLowerCase(Locale.ROOT), valueName};
+            headings = new String[] {groupBy.getLabel(), viewLabel(function, measure)};
+            valueType = function == EarningsAggregate.Function.COUNT ? LONG : DOUBLE;
+        }
+
+        @Override
+        int rowCount() {
+            return keys.length;
+        }
+
+        @Override
+        int columnCount() {
+            return 2;
+        }
+
+        @Override
+        String name(int column) {
+            return names[column];
+        }
+
+        @Override
+        String heading(int column) {
+            return headings[column];
+        }
+
+        @Override
+        byte type(int column) {
+            return column == 0 ? TEXT : valueType;
+        }
+
+        @Override
+        String key(int row) {
+            return keys[row];
+        }
+
+        @Override
+        double number(int row, int column) {
+            return values[row];
+        }
+    }
+
+    // Group name, row count, then n/sum/min/max/avg for each measure
+    private static class StatsTable extends Table {
+        private static final EarningsAggregate.Measure[] MEASURES = EarningsAggregate.Measure.values();
+        private static final String[] STATISTICS = {"n", "sum", "min", "max", "avg"};
+
+        private final EarningsAggregate.Groups groups;
+        private final String[] names;
+
+        StatsTable(EarningsAggregate.Groups groups, EarningsAggregate.GroupBy groupBy) {
+            this.groups = groups;
+            names = new String[2 + MEASURES.length * STATISTICS.length];
+            names[0] = groupBy.name().toLowerCase(Locale.ROOT);
+            names[1] = "rows";
+            int c = 2;
+            for (EarningsAggregate.Measure measure : MEASURES) {
+                for (String statistic : STATISTICS) {
+                    names[c++] = measure.name().toLowerCase(Locale.ROOT) + "_" + statistic;
+                }
+            }
+        }
+
+        @Override
+        int rowCount() {
+            return groups.size();
+        }
+
+        @Override
+        int columnCount() {
+            return names.length;
+        }
+
+        @Override
+        String name(int column) {
+            return names[column];
+        }
+
+        @Override
+        String heading(int column) {
+            return names[column];
+        }
+
+        @Override
+        byte type(int column) {
+            if (column == 0) {
+                return TEXT;
+            }
+            return column == 1 || (column - 2) % STATISTICS.length == 0 ? LONG : DOUBLE;
+        }
+
+        @Override
+        String key(int row) {
+            return groups.key(row);
+        }
+
+        @Override
+        double number(int row, int column) {
+            EarningsAggregate.GroupStats stats = groups.stats(row);
+            if (column == 1) {
+                return stats.rows;
+            }
+            int m = (column - 2) / STATISTICS.length;
+            long n = stats.n[m];
+            switch ((column - 2) % STATISTICS.length) {
+                case 0:
+                    return n;
+                case 1:
+                    return stats.sum[m];
+                case 2:
+                    return n > 0 ? stats.min[m] : Double.NaN;
+                case 3:
+                    return n > 0 ? stats.max[m] : Double.NaN;
+                default:
+                    return n > 0 ? stats.sum[m] / n : Double.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+// Row filter for the interactive views: a release year range plus an
+// optional genre, top country and minimum prize pool (TotalMoney). Genre
+// and country are resolved through EarningsIndex bitmaps and the prize pool
+// by a scan of the primitive money column, so changing the filter
+// re-aggregates the in-memory table without going back to the file.
+public class EarningsFilter {
+
+    public static final EarningsFilter DEFAULT = new EarningsFilter(
+            EarningsAggregate.DEFAULT_MIN_YEAR, EarningsAggregate.DEFAULT_MAX_YEAR, null, null, 0);
+
+    private final int minYear;
+    private final int maxYear;
+    private final String genre;
+    private final String country;
+    private final double minPrizePool;
+
+    // genre and country may be null for no restriction; minPrizePool <= 0 keeps every row
+    public EarningsFilter(int minYear, int maxYear, String genre, String country, double minPrizePool) {
+        if (maxYear < minYear) {
+            throw new IllegalArgumentException("Year range " + minYear + "-" + maxYear + " is empty");
+        }
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.genre = genre;
+        this.country = country;
+        this.minPrizePool = minPrizePool;
+    }
+
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return maxYear;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public double getMinPrizePool() {
+        return minPrizePool;
+    }
+
+    public boolean isDefault() {
+        return minYear == DEFAULT.minYear && maxYear == DEFAULT.maxYear && genre == null && country == null
+                && minPrizePool <= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof EarningsFilter)) {
+            return false;
+        }
+        EarningsFilter other = (EarningsFilter) o;
+        return minYear == other.minYear && maxYear == other.maxYear && Objects.equals(genre, other.genre)
+                && Objects.equals(country, other.country)
+                && Double.compare(Math.max(0, minPrizePool), Math.max(0, other.minPrizePool)) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minYear, maxYear, genre, country, Math.max(0, minPrizePool));
+    }
+
+    // Aggregates the table rows passing the filter
+    public EarningsAggregate aggregate(EarningsIndex index) {
+        EarningsTable table = index.getTable();
+        return EarningsAggregate.of(table, minYear, maxYear, select(index, 0, table.getRowCount()));
+    }
+
+    // Aggregates the rows passing the filter over several tables, e.g. the
+    // parts of a multi-file run, by merging one aggregate per table
+    public EarningsAggregate aggregate(List<EarningsIndex> indexes) {
+        if (indexes.size() == 1) {
+            return aggregate(indexes.get(0));
+        }
+        EarningsAggregate total = new EarningsAggregate(minYear, maxYear, indexes.get(0).getTable().getCharset());
+        for (EarningsIndex index : indexes) {
+            total.merge(aggregate(index));
+        }
+        return total;
+    }
+
+    // Adds the rows in [from, to) passing the filter to an aggregate made by aggregate()
+    public void addRows(EarningsAggregate aggregate, EarningsIndex index, int from, int to) {
+        aggregate.addRows(index.getTable(), from, to, select(index, from, to));
+    }
+
+    // Short description for chart titles, empty for the default filter
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        if (minYear != DEFAULT.minYear || maxYear != DEFAULT.maxYear) {
+            text.append(minYear).append('-').append(maxYear);
+        }
+        if (genre != null) {
+            text.append(text.length() > 0 ? ", " : "").append(genre);
+        }
+        if (country != null) {
+            text.append(text.length() > 0 ? ", " : "").append(country);
+        }
+        if (minPrizePool > 0) {
+            text.append(text.length() > 0 ? ", " : "").append("prize pool >= ")
+                    .append(String.format("%,.0f", minPrizePool));
+        }
+        return text.toString();
+    }
+
+    // Bitmap of the rows in [from, to) matching genre, country and prize
+    // pool, or null when none of those is set. The year range is left to
+    // the aggregate.
+    private long[] select(EarningsIndex index, int from, int to) {
+        EarningsTable table = index.getTable();
+        long[] selection = null;
+        if (genre != null) {
+            selection = restrict(selection, index, EarningsAggregate.GroupBy.GENRE, genre, to);
+        }
+        if (country != null) {
+            selection = restrict(selection, index, EarningsAggregate.GroupBy.TOP_COUNTRY, country, to);
+        }
+        if (minPrizePool > 0) {
+            double[] money = table.measure(EarningsAggregate.Measure.TOTAL_MONEY);
+            if (selection == null) {
+                selection = new long[EarningsIndex.words(to)];
+                for (int row = from; row < to; row++) {
+                    // NaN, i.e. an unparseable prize pool, never passes
+                    if (money[row] >= minPrizePool) {
+                        selection[row >>> 6] |= 1L << row;
+                    }
+                }
+            } else {
+                for (int row = EarningsIndex.nextSetBit(selection, from, to); row < to;
+                        row = EarningsIndex.nextSetBit(selection, row + 1, to)) {
+                    if (!(money[row] >= minPrizePool)) {
+                        selection[row >>> 6] &= ~(1L << row);
+                    }
+                }
+            }
+        }
+        return selection;
+    }
+
+    // ANDs the rows having value in column into selection (null meaning all rows)
+    private static long[] restrict(long[] selection, EarningsIndex index, EarningsAggregate.GroupBy column,
+            String value, int to) {
+        int words = EarningsIndex.words(to);
+        int code = index.getTable().dictionary(EarningsTable.textColumnIndex(column)).find(value);
+        if (code < 0) {
+            return new long[words];
+        }
+        long[] bits = index.bitmap(column, code);
+        if (selection == null) {
+            return Arrays.copyOf(bits, words);
+        }
+        for (int w = 0; w < words; w++) {
+            selection[w] &= w < bits.length ? bits[w] : 0;
+        }
+        return selection;
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.*;
+import java.util.List;
+
+// Bitmap indexes over the dictionary-encoded text columns of an
+// EarningsTable: for a (column, code) pair, bit r of the bitmap is set when
+// row r has that value. A bitmap is built the first time a filter asks for
+// it and kept, so only values that are actually filtered on cost memory
+// (one bit per row each). update() extends the built bitmaps over rows
+// appended to the table since, e.g. by the tail watcher. Both are
+// synchronized, so threads can filter a table that is not being appended to.
+public class EarningsIndex {
+
+    private final EarningsTable table;
+    private final List<List<long[]>> bitmaps = new ArrayList<>();
+    private int rowsIndexed;
+
+    public EarningsIndex(EarningsTable table) {
+        this.table = table;
+        for (int t = 0; t < EarningsTable.TEXT_COLUMNS.length; t++) {
+            bitmaps.add(new ArrayList<long[]>());
+        }
+        rowsIndexed = table.getRowCount();
+    }
+
+    public EarningsTable getTable() {
+        return table;
+    }
+
+    // Rows of the value with the given code in a text column. The array may
+    // be longer than needed; bits past the table's row count are clear.
+    // Callers must not modify it.
+    public synchronized long[] bitmap(EarningsAggregate.GroupBy column, int code) {
+        update();
+        int t = EarningsTable.textColumnIndex(column);
+        if (t < 0) {
+            throw new IllegalArgumentException(column + " is not a dictionary column");
+        }
+        List<long[]> values = bitmaps.get(t);
+        while (values.size() <= code) {
+            values.add(null);
+        }
+        long[] bits = values.get(code);
+        if (bits == null) {
+            bits = new long[words(rowsIndexed)];
+            int[] codes = table.codes(t);
+            for (int row = 0; row < rowsIndexed; row++) {
+                if (codes[row] == code) {
+                    bits[row >>> 6] |= 1L << row;
+                }
+            }
+            values.set(code, bits);
+        }
+        return bits;
+    }
+
+    // Indexes rows appended to the table since the last call
+    public synchronized void update() {
+        int rowCount = table.getRowCount();
+        if (rowCount == rowsIndexed) {
+            return;
+        }
+        for (int t = 0; t < bitmaps.size(); t++) {
+            List<long[]> column = bitmaps.get(t);
+            if (column.isEmpty()) {
+                continue;
+            }
+            int[] codes = table.codes(t);
+            for (int code = 0; code < column.size(); code++) {
+                long[] bits = column.get(code);
+                if (bits != null && bits.length < words(rowCount)) {
+                    column.set(code, Arrays.copyOf(bits, Math.max(words(rowCount), bits.length + (bits.length >> 1))));
+                }
+            }
+            for (int row = rowsIndexed; row < rowCount; row++) {
+                int code = codes[row];
+                long[] bits = code < column.size() ? column.get(code) : null;
+                if (bits != null) {
+                    bits[row >>> 6] |= 1L << row;
+                }
+            }
+        }
+        rowsIndexed = rowCount;
+    }
+
+    // Number of longs needed for a bitmap of the given number of rows
+    static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    // First set bit in [from, to), or to if there is none
+    static int nextSetBit(long[] bits, int from, int to) {
+        if (from >= to) {
+            return to;
+        }
+        int w = from >>> 6;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                return Math.min(bit, to);
+            }
+            if (++w >= bits.length || (w << 6) >= to) {
+                return to;
+            }
+            word = bits[w];
+        }
+    }
+}
@@ -0,0 +1,438 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Process-wide counters and timers for ingest, aggregation, chart updates
+// and painting. Recording only adds to LongAdders and atomics, so it is safe
+// from the ingest threads and cheap enough for every paint. The numbers are
+// published as the MBean esports:type=EarningsMetrics, and each recording
+// also commits a JFR event (category "ESports Bar Graph") that costs next to
+// nothing unless a flight recording is running.
+public class EarningsMetrics implements EarningsMetricsMBean {
+
+    public static final String OBJECT_NAME = "esports:type=EarningsMetrics";
+
+    private static final EarningsMetrics INSTANCE = register(new EarningsMetrics());
+
+    // Count, total, maximum and latest duration of one phase
+    public static final class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private volatile long lastNanos;
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            lastNanos = nanos;
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            lastNanos = 0;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        public double getLastMillis() {
+            return lastNanos / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n > 0 ? totalNanos.sum() / 1e6 / n : 0;
+        }
+    }
+
+    // The most recent ingest, for the overlay; replaced as a whole
+    private static final class LastIngest {
+        final String source;
+        final long bytes;
+        final long rows;
+        final long malformed;
+        final long readNanos;
+        final long parseNanos;
+        final boolean fromCache;
+
+        LastIngest(String source, long bytes, long rows, long malformed,
+                long readNanos, long parseNanos, boolean fromCache) {
+            this.source = source;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.malformed = malformed;
+            this.readNanos = readNanos;
+            this.parseNanos = parseNanos;
+            this.fromCache = fromCache;
+        }
+    }
+
+    // Rows kept and left out by the most recent aggregation
+    private static final class LastAggregate {
+        final long accepted;
+        final long badYear;
+        final long outOfRange;
+
+        LastAggregate(long accepted, long badYear, long outOfRange) {
+            this.accepted = accepted;
+            this.badYear = badYear;
+            this.outOfRange = outOfRange;
+        }
+    }
+
+    @Name("esports.Ingest")
+    @Label("CSV Ingest")
+    @Category("ESports Bar Graph")
+    @Description("One file read and parsed into a table, or loaded from its snapshot")
+    static class IngestEvent extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Malformed Rows")
+        long malformedRows;
+
+        @Label("Read Time")
+        @Timespan
+        long readTime;
+
+        @Label("Parse Time")
+        @Timespan
+        long parseTime;
+
+        @Label("From Cache")
+        boolean fromCache;
+    }
+
+    @Name("esports.Aggregate")
+    @Label("Aggregation")
+    @Category("ESports Bar Graph")
+    static class AggregateEvent extends Event {
+        @Label("Rows Accepted")
+        long rowsAccepted;
+
+        @Label("Bad Release Years")
+        long rowsBadYear;
+
+        @Label("Years Out Of Range")
+        long rowsOutOfRange;
+
+        @Label("Aggregate Time")
+        @Timespan
+        long aggregateTime;
+    }
+
+    @Name("esports.ChartUpdate")
+    @Label("Chart Update")
+    @Category("ESports Bar Graph")
+    static class ChartUpdateEvent extends Event {
+        @Label("View")
+        String view;
+
+        @Label("Categories")
+        int categories;
+
+        @Label("Update Time")
+        @Timespan
+        long updateTime;
+    }
+
+    @Name("esports.Paint")
+    @Label("Chart Paint")
+    @Category("ESports Bar Graph")
+    static class PaintEvent extends Event {
+        @Label("Paint Time")
+        @Timespan
+        long paintTime;
+    }
+
+    // Checked before a paint event is allocated; isEnabled is true while any
+    // recording has the event turned on
+    private static final EventType PAINT_EVENT_TYPE = EventType.getEventType(PaintEvent.class);
+
+    private final LongAdder filesIngested = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsAccepted = new LongAdder();
+    private final LongAdder rowsMalformed = new LongAdder();
+    private final LongAdder rowsBadYear = new LongAdder();
+    private final LongAdder rowsOutOfRange = new LongAdder();
+
+    public final Timing read = new Timing();
+    public final Timing parse = new Timing();
+    public final Timing aggregate = new Timing();
+    public final Timing chartUpdate = new Timing();
+    public final Timing paint = new Timing();
+
+    private volatile LastIngest lastIngest;
+    private volatile LastAggregate lastAggregate;
+
+    private EarningsMetrics() {
+    }
+
+    public static EarningsMetrics get() {
+        return INSTANCE;
+    }
+
+    private static EarningsMetrics register(EarningsMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            // Still usable in-process, just not visible over JMX
+        }
+        return metrics;
+    }
+
+    // One file (or its snapshot) turned into rows. readNanos is time spent
+    // waiting for bytes, parseNanos the rest; on the memory-mapped path the
+    // two cannot be told apart and everything counts as parsing.
+    public void recordIngest(String source, long bytes, long rows, long malformed,
+            long readNanos, long parseNanos, boolean fromCache) {
+        filesIngested.increment();
+        if (fromCache) {
+            cacheHits.increment();
+        }
+        bytesRead.add(bytes);
+        rowsRead.add(rows);
+        rowsMalformed.add(malformed);
+        read.record(readNanos);
+        parse.record(parseNanos);
+        lastIngest = new LastIngest(source, bytes, rows, malformed, readNanos, parseNanos, fromCache);
+
+        IngestEvent event = new IngestEvent();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.bytes = bytes;
+            event.rows = rows;
+            event.malformedRows = malformed;
+            event.readTime = readNanos;
+            event.parseTime = parseNanos;
+            event.fromCache = fromCache;
+            event.commit();
+        }
+    }
+
+    // Rows kept or left out by an aggregation whose time is already part of
+    // recordIngest's parse time, e.g. when streaming straight into an aggregate
+    public void countRows(long accepted, long badYear, long outOfRange) {
+        rowsAccepted.add(accepted);
+        rowsBadYear.add(badYear);
+        rowsOutOfRange.add(outOfRange);
+        lastAggregate = new LastAggregate(accepted, badYear, outOfRange);
+    }
+
+    public void recordAggregate(long accepted, long badYear, long outOfRange, long nanos) {
+        countRows(accepted, badYear, outOfRange);
+        aggregate.record(nanos);
+
+        AggregateEvent event = new AggregateEvent();
+        if (event.shouldCommit()) {
+            event.rowsAccepted = accepted;
+            event.rowsBadYear = badYear;
+            event.rowsOutOfRange = outOfRange;
+            event.aggregateTime = nanos;
+            event.commit();
+        }
+    }
+
+    // Re-aggregation of rows already counted by an earlier ingest, e.g. an
+    // in-memory filter change; only the time goes into the metrics
+    public void recordRefilter(long nanos) {
+        aggregate.record(nanos);
+    }
+
+    public void recordChartUpdate(String view, int categories, long nanos) {
+        chartUpdate.record(nanos);
+
+        ChartUpdateEvent event = new ChartUpdateEvent();
+        if (event.shouldCommit()) {
+            event.view = view;
+            event.categories = categories;
+            event.updateTime = nanos;
+            event.commit();
+        }
+    }
+
+    // Called for every frame, so nothing here may allocate when JFR is off
+    public void recordPaint(long nanos) {
+        paint.record(nanos);
+
+        if (!PAINT_EVENT_TYPE.isEnabled()) {
+            return;
+        }
+        PaintEvent event = new PaintEvent();
+        if (event.shouldCommit()) {
+            event.paintTime = nanos;
+            event.commit();
+        }
+    }
+
+    // A few lines for the GUI overlay and the batch --stats output
+    public String[] summary() {
+        LastIngest ingest = lastIngest;
+        LastAggregate rows = lastAggregate;
+        String[] lines = new String[4];
+        if (ingest == null) {
+            lines[0] = "Ingest: nothing loaded yet";
+        } else {
+            long nanos = ingest.readNanos + ingest.parseNanos;
+            lines[0] = String.format("Ingest %s: %,d rows, %.1f MB in %.1f ms (%,.0f rows/s)%s",
+                    ingest.source, ingest.rows, ingest.bytes / 1048576.0, nanos / 1e6,
+                    rowsPerSecond(ingest), ingest.fromCache ? ", cached" : "");
+        }
+        lines[1] = String.format("Rejected: %,d malformed, %,d bad year, %,d out of range",
+                ingest != null ? ingest.malformed : 0,
+                rows != null ? rows.badYear : 0, rows != null ? rows.outOfRange : 0);
+        lines[2] = String.format("Read %.1f ms, parse %.1f ms, aggregate %.1f ms, chart update %.1f ms",
+                ingest != null ? ingest.readNanos / 1e6 : 0, ingest != null ? ingest.parseNanos / 1e6 : 0,
+                aggregate.getLastMillis(), chartUpdate.getLastMillis());
+        lines[3] = String.format("Paint: last %.2f ms, mean %.2f ms, max %.2f ms (%,d frames)",
+                paint.getLastMillis(), paint.getMeanMillis(), paint.getMaxMillis(), paint.getCount());
+        return lines;
+    }
+
+    private static double rowsPerSecond(LastIngest ingest) {
+        long nanos = ingest.readNanos + ingest.parseNanos;
+        return nanos > 0 ? ingest.rows * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public long getFilesIngested() {
+        return filesIngested.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getRowsAccepted() {
+        return rowsAccepted.sum();
+    }
+
+    @Override
+    public long getRowsMalformed() {
+        return rowsMalformed.sum();
+    }
+
+    @Override
+    public long getRowsBadYear() {
+        return rowsBadYear.sum();
+    }
+
+    @Override
+    public long getRowsOutOfRange() {
+        return rowsOutOfRange.sum();
+    }
+
+    @Override
+    public double getLastRowsPerSecond() {
+        LastIngest ingest = lastIngest;
+        return ingest != null ? rowsPerSecond(ingest) : 0;
+    }
+
+    @Override
+    public double getReadMillis() {
+        return read.getTotalMillis();
+    }
+
+    @Override
+    public double getParseMillis() {
+        return parse.getTotalMillis();
+    }
+
+    @Override
+    public double getAggregateMillis() {
+        return aggregate.getTotalMillis();
+    }
+
+    @Override
+    public long getChartUpdateCount() {
+        return chartUpdate.getCount();
+    }
+
+    @Override
+    public double getLastChartUpdateMillis() {
+        return chartUpdate.getLastMillis();
+    }
+
+    @Override
+    public long getPaintCount() {
+        return paint.getCount();
+    }
+
+    @Override
+    public double getLastPaintMillis() {
+        return paint.getLastMillis();
+    }
+
+    @Override
+    public double getMeanPaintMillis() {
+        return paint.getMeanMillis();
+    }
+
+    @Override
+    public double getMaxPaintMillis() {
+        return paint.getMaxMillis();
+    }
+
+    @Override
+    public void resetCounters() {
+        filesIngested.reset();
+        cacheHits.reset();
+        bytesRead.reset();
+        rowsRead.reset();
+        rowsAccepted.reset();
+        rowsMalformed.reset();
+        rowsBadYear.reset();
+        rowsOutOfRange.reset();
+        read.reset();
+        parse.reset();
+        aggregate.reset();
+        chartUpdate.reset();
+        paint.reset();
+    }
+}
@@ -0,0 +1,43 @@
+// Management interface of EarningsMetrics, registered with the platform
+// MBean server as esports:type=EarningsMetrics. Counts are totals since
+// start-up or the last resetCounters(); times are in milliseconds.
+public interface EarningsMetricsMBean {
+
+    long getFilesIngested();
+
+    long getCacheHits();
+
+    long getBytesRead();
+
+    long getRowsRead();
+
+    long getRowsAccepted();
+
+    long getRowsMalformed();
+
+    long getRowsBadYear();
+
+    long getRowsOutOfRange();
+
+    double getLastRowsPerSecond();
+
+    double getReadMillis();
+
+    double getParseMillis();
+
+    double getAggregateMillis();
+
+    long getChartUpdateCount();
+
+    double getLastChartUpdateMillis();
+
+    long getPaintCount();
+
+    double getLastPaintMillis();
+
+    double getMeanPaintMillis();
+
+    double getMaxPaintMillis();
+
+    void resetCounters();
+}
@@ -0,0 +1,601 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local web server for the esports_data.html dashboard. The browser sends
+// the raw CSV (or the server is started with files) and the Java engine
+// parses and aggregates it, so the page only receives the numbers it
+// draws instead of parsing large files itself.
+//
+//   java EarningsServer [--port 8080] [--bind 127.0.0.1] [--html FILE] [--threads N]
+//                       [--max-upload MB] [file or glob]...
+//
+//   GET  /                 the dashboard page
+//   POST /api/data         replaces the data set with the CSV in the body,
+//                          at most --max-upload MB (default 1024), in UTF-8
+//                          unless its Content-Type names a charset
+//   GET  /api/summary      row counts and the genres and countries present
+//   GET  /api/view         one chart view:
+//          groupBy=year|genre|country|game           (default year)
+//          aggregate=count|sum:M|avg:M|min:M|max:M   (default count)
+//          years=FROM-TO, genre=, country=, minPrize= filters as in the GUI
+//          limit=N        largest groups in JSON for non-year views (default 200)
+//          format=json|csv|jsonl|columnar            (default json)
+//
+// GET responses carry an ETag derived from the data set and the request,
+// so a browser revalidating an unchanged view gets 304 Not Modified. Views
+// are aggregated outside any lock, so requests are computed concurrently.
+public class EarningsServer {
+
+    // Files named on the command line are read like the GUI reads them
+    private static final Charset FILE_CHARSET = Charset.defaultCharset();
+    private static final int DEFAULT_LIMIT = 200;
+    private static final long DEFAULT_MAX_UPLOAD_MB = 1024;
+    // Distinct views remembered per data set
+    private static final int CACHED_RESPONSES = 64;
+
+    // Tells data sets of different server runs apart in ETags
+    private static final String INSTANCE = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // A loaded table with its index and the responses computed from it
+    private static final class Dataset {
+        private final String source;
+        private final EarningsTable table;
+        private final EarningsIndex index;
+        private final String version;
+        private final Map<String, byte[]> responses = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > CACHED_RESPONSES;
+            }
+        };
+
+        Dataset(String source, EarningsTable table) {
+            this.source = source;
+            this.table = table;
+            this.index = new EarningsIndex(table);
+            this.version = INSTANCE + "-" + VERSIONS.incrementAndGet();
+        }
+    }
+
+    private int port = 8080;
+    private String bind = "127.0.0.1";
+    private File html = new File("esports_data.html");
+    private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private long maxUploadBytes = DEFAULT_MAX_UPLOAD_MB << 20;
+    private final List<String> inputs = new ArrayList<>();
+    private volatile Dataset dataset = new Dataset("", new EarningsTable(FILE_CHARSET));
+
+    public static void main(String[] args) {
+        EarningsServer server = new EarningsServer();
+        try {
+            server.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.err.println("usage: java EarningsServer [--port N] [--bind ADDRESS] [--html FILE]"
+                    + " [--threads N] [--max-upload MB] [file or glob]...");
+            System.exit(2);
+        }
+
+        try {
+            server.start();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                inputs.add(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--port":
+                    port = parseCount(value, "port");
+                    break;
+                case "--bind":
+                    bind = value;
+                    break;
+                case "--html":
+                    html = new File(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, parseCount(value, "thread count"));
+                    break;
+                case "--max-upload":
+                    maxUploadBytes = Math.max(1, parseCount(value, "upload limit")) * 1048576L;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+    }
+
+    private static int parseCount(String value, String what) {
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad " + what + ": " + value);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("bad " + what + ": " + value);
+        }
+        return count;
+    }
+
+    private void start() throws IOException, InterruptedException {
+        if (!inputs.isEmpty()) {
+            load();
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.createContext("/", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, Map<String, String> query) throws IOException {
+                servePage(exchange);
+            }
+        });
+        server.createContext("/api/data", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, Map<String, String> query) throws IOException {
+                upload(exchange);
+            }
+        });
+        server.createContext("/api/summary", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, Map<String, String> query) throws IOException {
+                serveSummary(exchange);
+            }
+        });
+        server.createContext("/api/view", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, Map<String, String> query) throws IOException {
+                serveView(exchange, query);
+            }
+        });
+        server.start();
+        System.err.println("Serving http://" + bind + ":" + server.getAddress().getPort() + "/");
+    }
+
+    // Parses the command line files the way the GUI does, snapshot cache included
+    private void load() throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (String input : inputs) {
+            files.addAll(EarningsBatch.expand(input));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            MultiFileIngest ingest = new MultiFileIngest(files, FILE_CHARSET, SnapshotCache.defaultCache(),
+                    EarningsAggregate.DEFAULT_MIN_YEAR, EarningsAggregate.DEFAULT_MAX_YEAR,
+                    Collections.<File, MultiFileIngest.Part>emptyMap());
+            ingest.start(pool);
+            List<MultiFileIngest.Part> parts = ingest.await(1, TimeUnit.DAYS);
+            if (parts == null) {
+                throw new IOException("timed out loading " + inputs);
+            }
+            String source = files.size() == 1 ? files.get(0).getName() : files.size() + " files";
+            dataset = new Dataset(source, MultiFileIngest.mergeTables(parts, FILE_CHARSET));
+            System.err.println("Loaded " + dataset.table.getRowCount() + " rows from " + source);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void servePage(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/") && !path.equals("/" + html.getName())) {
+            sendError(exchange, 404, "Not found: " + path);
+            return;
+        }
+        if (!html.isFile()) {
+            sendError(exchange, 404, "Dashboard page " + html + " not found");
+            return;
+        }
+        // Checked before reading, so a cached page costs no disk read
+        String etag = "\"" + Long.toString(html.lastModified(), 36) + "-" + Long.toString(html.length(), 36) + "\"";
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        byte[] body = java.nio.file.Files.readAllBytes(html.toPath());
+        send(exchange, 200, "text/html; charset=utf-8", etag, body);
+    }
+
+    // Streams the request body through the tokenizer into a new table
+    private void upload(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            sendError(exchange, 405, "Use POST with the CSV file as body");
+            return;
+        }
+        // The page sends the file name URI-encoded, as headers are ASCII
+        String name = exchange.getRequestHeaders().getFirst("X-File-Name");
+        if (name != null) {
+            name = URLDecoder.decode(name, StandardCharsets.UTF_8);
+        }
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && parseLength(length) > maxUploadBytes) {
+            sendError(exchange, 413, "Upload larger than " + (maxUploadBytes >> 20) + " MB");
+            return;
+        }
+        long start = System.nanoTime();
+        EarningsTable table = new EarningsTable(uploadCharset(exchange.getRequestHeaders().getFirst("Content-Type")));
+        long rows = 0;
+        // Chunked uploads carry no length, so the body is also counted as it is read
+        CsvTokenizer tokenizer = new CsvTokenizer(new LimitedInputStream(exchange.getRequestBody(), maxUploadBytes),
+                EarningsAggregate.FIELD_COUNT);
+        try {
+            // Skip header line
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                rows++;
+                table.append(tokenizer);
+            }
+        } catch (UploadTooLargeException e) {
+            sendError(exchange, 413, "Upload larger than " + (maxUploadBytes >> 20) + " MB");
+            return;
+        } finally {
+            tokenizer.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        long readNanos = tokenizer.readNanos();
+        EarningsMetrics.get().recordIngest(name != null ? name : "upload", tokenizer.bytesConsumed(), rows,
+                table.getMalformedRows(), readNanos, elapsed - readNanos, false);
+
+        dataset = new Dataset(name != null ? name : "upload", table);
+        send(exchange, 200, "application/json", null, summary(dataset));
+    }
+
+    private void serveSummary(HttpExchange exchange) throws IOException {
+        Dataset data = dataset;
+        String etag = "\"" + data.version + "-summary\"";
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        send(exchange, 200, "application/json", etag, summary(data));
+    }
+
+    private void serveView(HttpExchange exchange, Map<String, String> query) throws IOException {
+        EarningsAggregate.GroupBy groupBy = EarningsBatch.parseGroupBy(param(query, "groupBy", "year"));
+        String aggregate = param(query, "aggregate", "count").toLowerCase(Locale.ROOT);
+        EarningsAggregate.Function function;
+        try {
+            function = EarningsAggregate.Function.valueOf(aggregate.split(":", 2)[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown aggregate: " + aggregate);
+        }
+        EarningsAggregate.Measure measure = EarningsAggregate.Measure.TOTAL_MONEY;
+        if (function != EarningsAggregate.Function.COUNT) {
+            if (aggregate.indexOf(':') < 0) {
+                throw new IllegalArgumentException(aggregate + " needs a measure, e.g. " + aggregate + ":money");
+            }
+            measure = EarningsBatch.parseMeasure(aggregate.substring(aggregate.indexOf(':') + 1));
+        }
+        EarningsFilter filter = parseFilter(query);
+        String format = param(query, "format", "json").toLowerCase(Locale.ROOT);
+        EarningsExporter.Format exportFormat = format.equals("json") ? null : EarningsBatch.parseFormat(format);
+        int limit = parseCount(param(query, "limit", String.valueOf(DEFAULT_LIMIT)), "limit");
+
+        // Normalized, so equivalent requests share a cache entry and an ETag
+        String key = groupBy + "|" + function + "|" + measure + "|" + filter.getMinYear() + "-" + filter.getMaxYear()
+                + "|" + filter.getGenre() + "|" + filter.getCountry() + "|" + Math.max(0, filter.getMinPrizePool())
+                + "|" + format + "|" + limit;
+        Dataset data = dataset;
+        String etag = "\"" + data.version + "-" + digest(key) + "\"";
+        if (notModified(exchange, etag)) {
+            return;
+        }
+
+        // The lock only covers the response cache. Two requests for the same
+        // new view may both compute it; they produce the same bytes.
+        byte[] body;
+        synchronized (data.responses) {
+            body = data.responses.get(key);
+        }
+        if (body == null) {
+            long start = System.nanoTime();
+            EarningsAggregate result = filter.aggregate(data.index);
+            EarningsMetrics.get().recordRefilter(System.nanoTime() - start);
+            body = exportFormat == null
+                    ? viewJson(data, result, filter, groupBy, function, measure, limit)
+                    : export(result, exportFormat, groupBy, function, measure);
+            synchronized (data.responses) {
+                data.responses.put(key, body);
+            }
+        }
+        String type;
+        if (exportFormat == null) {
+            type = "application/json";
+        } else if (exportFormat == EarningsExporter.Format.CSV) {
+            type = "text/csv; charset=utf-8";
+        } else if (exportFormat == EarningsExporter.Format.JSON_LINES) {
+            type = "application/x-ndjson";
+        } else {
+            type = "application/octet-stream";
+        }
+        send(exchange, 200, type, etag, body);
+    }
+
+    private static EarningsFilter parseFilter(Map<String, String> query) {
+        int minYear = EarningsAggregate.DEFAULT_MIN_YEAR;
+        int maxYear = EarningsAggregate.DEFAULT_MAX_YEAR;
+        String years = query.get("years");
+        if (years != null && !years.isEmpty()) {
+            String[] parts = years.split("-", 2);
+            try {
+                minYear = Integer.parseInt(parts[0].trim());
+                maxYear = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : minYear;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad year range: " + years);
+            }
+        }
+        double minPrize = 0;
+        String prize = query.get("minPrize");
+        if (prize != null && !prize.isEmpty()) {
+            try {
+                minPrize = Double.parseDouble(prize);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad minimum prize pool: " + prize);
+            }
+        }
+        return new EarningsFilter(minYear, maxYear, emptyToNull(query.get("genre")),
+                emptyToNull(query.get("country")), minPrize);
+    }
+
+    private static byte[] summary(Dataset data) throws IOException {
+        StringWriter out = new StringWriter();
+        out.write("{\"source\":");
+        EarningsExporter.writeJsonString(out, data.source);
+        out.write(",\"rows\":" + data.table.getRowCount() + ",\"malformed\":" + data.table.getMalformedRows());
+        out.write(",\"minYear\":" + EarningsAggregate.DEFAULT_MIN_YEAR
+                + ",\"maxYear\":" + EarningsAggregate.DEFAULT_MAX_YEAR);
+        out.write(",\"genres\":");
+        writeDictionary(out, data.table, EarningsAggregate.GroupBy.GENRE);
+        out.write(",\"countries\":");
+        writeDictionary(out, data.table, EarningsAggregate.GroupBy.TOP_COUNTRY);
+        out.write("}");
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeDictionary(Writer out, EarningsTable table, EarningsAggregate.GroupBy column)
+            throws IOException {
+        FieldDictionary dictionary = table.dictionary(EarningsTable.textColumnIndex(column));
+        List<String> values = new ArrayList<>();
+        for (int code = 0; code < dictionary.size(); code++) {
+            values.add(dictionary.get(code));
+        }
+        Collections.sort(values, String.CASE_INSENSITIVE_ORDER);
+        writeJsonArray(out, values);
+    }
+
+    // {"title", "xLabel", "yLabel", "rows", "groups", "labels": [...], "values": [...]}
+    // with groups the number before the limit was applied
+    private static byte[] viewJson(Dataset data, EarningsAggregate result, EarningsFilter filter,
+            EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure, int limit) throws IOException {
+        Map<String, Double> view = result.view(groupBy, function, measure);
+        String label = EarningsExporter.viewLabel(function, measure);
+        String description = filter.describe();
+        StringWriter out = new StringWriter();
+        out.write("{\"title\":");
+        EarningsExporter.writeJsonString(out, label + " by " + groupBy.getLabel()
+                + (description.isEmpty() ? "" : " (" + description + ")"));
+        out.write(",\"xLabel\":");
+        EarningsExporter.writeJsonString(out, groupBy.getLabel());
+        out.write(",\"yLabel\":");
+        EarningsExporter.writeJsonString(out, label);
+        out.write(",\"rows\":" + result.getRowsAccepted() + ",\"groups\":" + view.size());
+
+        List<String> labels = new ArrayList<>();
+        StringBuilder values = new StringBuilder();
+        for (Map.Entry<String, Double> entry : view.entrySet()) {
+            if (groupBy != EarningsAggregate.GroupBy.RELEASE_YEAR && labels.size() >= limit) {
+                break;
+            }
+            labels.add(entry.getKey());
+            values.append(values.length() > 0 ? "," : "").append(NumberText.formatCents(entry.getValue()));
+        }
+        out.write(",\"labels\":");
+        writeJsonArray(out, labels);
+        out.write(",\"values\":[" + values + "]}");
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] export(EarningsAggregate result, EarningsExporter.Format format,
+            EarningsAggregate.GroupBy groupBy, EarningsAggregate.Function function,
+            EarningsAggregate.Measure measure) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EarningsExporter.writeView(Channels.newChannel(bytes), format, result, groupBy, function, measure,
+                StandardCharsets.UTF_8);
+        return bytes.toByteArray();
+    }
+
+    private static void writeJsonArray(Writer out, List<String> values) throws IOException {
+        out.write('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            EarningsExporter.writeJsonString(out, values.get(i));
+        }
+        out.write(']');
+    }
+
+    // SHA-256 of the normalized request, URL-safe Base64 without padding
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The charset parameter of the upload's Content-Type, else UTF-8, which
+    // browsers use for files they do not label
+    private static Charset uploadCharset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                    String name = pair[1].trim().replace("\"", "");
+                    try {
+                        return Charset.forName(name);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unsupported charset: " + name);
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad Content-Length: " + value);
+        }
+    }
+
+    private static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String match = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (match == null || !match.contains(etag)) {
+            return false;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(304, -1);
+        return true;
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, String etag, byte[] body)
+            throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", type);
+        if (etag != null) {
+            headers.set("ETag", etag);
+            // Stored but revalidated every time, since the data set can change
+            headers.set("Cache-Control", "no-cache");
+        } else {
+            headers.set("Cache-Control", "no-store");
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", null, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String param(Map<String, String> query, String name, String fallback) {
+        String value = query.get(name);
+        return value == null || value.isEmpty() ? fallback : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static final class UploadTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UploadTooLargeException() {
+            super("upload too large");
+        }
+    }
+
+    // Fails once more than limit bytes have been read
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Asks for one byte past the limit so an oversized body is noticed
+            int n = in.read(b, off, (int) Math.min(len, remaining + 1));
+            if (n > 0) {
+                remaining -= n;
+                if (remaining < 0) {
+                    throw new UploadTooLargeException();
+                }
+            }
+            return n;
+        }
+    }
+
+    // Decodes the query string and maps bad requests to 400 and I/O
+    // failures to 500, so the handlers only deal with the happy path
+    private abstract static class Handler implements HttpHandler {
+
+        abstract void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("error: " + exchange.getRequestURI() + ": " + e);
+                sendError(exchange, 500, "Internal error: " + e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static Map<String, String> parseQuery(String raw) {
+            Map<String, String> query = new HashMap<>();
+            if (raw == null) {
+                return query;
+            }
+            for (String pair : raw.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = equals >= 0 ? pair.substring(0, equals) : pair;
+                String value = equals >= 0 ? pair.substring(equals + 1) : "";
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+            return query;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.List;
+
+// Approximate statistics over the ESport_Earnings schema for feeds too large
+// to aggregate exactly. Memory is fixed by the constants below, not by the
+// number of rows:
+//  - distinct games overall and per release year (HyperLogLog)
+//  - top countries by summed Top_Country_Earnings (Space-Saving)
+//  - TotalMoney quantiles per genre (t-digest); genres past MAX_GENRES
+//    share one "Other" digest
+// Rows are taken straight from the tokenizer like EarningsAggregate.accept,
+// and sketches of parallel chunks or files merge into one.
+public class EarningsSketch {
+
+    public static final int MAX_GENRES = 64;
+    public static final int COUNTRY_COUNTERS = 256;
+    public static final String OTHER_GENRE = "Other";
+
+    private final int minYear;
+    private final int maxYear;
+    private final HyperLogLog games = new HyperLogLog();
+    private final HyperLogLog[] gamesPerYear;
+    private final SpaceSaving countries;
+    private final FieldDictionary genres;
+    private final List<TDigest> moneyByGenre = new ArrayList<>();
+    private final TDigest otherGenres = new TDigest();
+    private final YearHistogram yearCounts;
+    private long rowsAccepted;
+
+    public EarningsSketch(int minYear, int maxYear, Charset charset) {
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.gamesPerYear = new HyperLogLog[maxYear - minYear + 1];
+        this.countries = new SpaceSaving(COUNTRY_COUNTERS, charset);
+        this.genres = new FieldDictionary(charset);
+        this.yearCounts = new YearHistogram(minYear, maxYear);
+    }
+
+    // Adds the tokenizer's current row. Malformed rows or ones with a release
+    // year outside [minYear, maxYear] are skipped and false is returned.
+    public boolean accept(CsvTokenizer row) {
+        if (!EarningsAggregate.isWellFormed(row)) {
+            return false;
+        }
+        int year = row.parseInt(EarningsAggregate.RELEASE_YEAR_COLUMN);
+        if (year < minYear || year > maxYear) {
+            return false;
+        }
+        yearCounts.increment(year);
+        byte[] buf = row.buffer();
+
+        int start = row.fieldStart(EarningsAggregate.GAME_NAME_COLUMN);
+        int end = row.fieldEnd(EarningsAggregate.GAME_NAME_COLUMN);
+        long hash = HyperLogLog.hash64(buf, start, end);
+        games.addHash(hash);
+        HyperLogLog perYear = gamesPerYear[year - minYear];
+        if (perYear == null) {
+            perYear = new HyperLogLog();
+            gamesPerYear[year - minYear] = perYear;
+        }
+        perYear.addHash(hash);
+
+        countries.add(buf, row.fieldStart(EarningsAggregate.TOP_COUNTRY_COLUMN),
+                row.fieldEnd(EarningsAggregate.TOP_COUNTRY_COLUMN),
+                row.parseDouble(EarningsAggregate.TOP_COUNTRY_EARNINGS_COLUMN));
+
+        start = row.fieldStart(EarningsAggregate.GENRE_COLUMN);
+        end = row.fieldEnd(EarningsAggregate.GENRE_COLUMN);
+        genreDigest(buf, start, end).add(row.parseDouble(EarningsAggregate.TOTAL_MONEY_COLUMN));
+
+        rowsAccepted++;
+        return true;
+    }
+
+    // Folds the sketch of another chunk or file into this one
+    public void merge(EarningsSketch other) {
+        games.merge(other.games);
+        for (int i = 0; i < other.gamesPerYear.length; i++) {
+            HyperLogLog theirs = other.gamesPerYear[i];
+            int index = other.minYear + i - minYear;
+            if (theirs == null || index < 0 || index >= gamesPerYear.length) {
+                continue;
+            }
+            if (gamesPerYear[index] == null) {
+                gamesPerYear[index] = new HyperLogLog();
+            }
+            gamesPerYear[index].merge(theirs);
+        }
+        countries.merge(other.countries);
+        for (int code = 0; code < other.moneyByGenre.size(); code++) {
+            byte[] raw = other.genres.rawBytes(code);
+            genreDigest(raw, 0, raw.length).merge(other.moneyByGenre.get(code));
+        }
+        otherGenres.merge(other.otherGenres);
+        yearCounts.merge(other.yearCounts);
+        rowsAccepted += other.rowsAccepted;
+    }
+
+    private TDigest genreDigest(byte[] buf, int start, int end) {
+        int code = genres.find(buf, start, end);
+        if (code < 0) {
+            if (genres.size() >= MAX_GENRES) {
+                return otherGenres;
+            }
+            code = genres.codeOf(buf, start, end);
+            moneyByGenre.add(new TDigest());
+        }
+        return moneyByGenre.get(code);
+    }
+
+    public long getRowsAccepted() {
+        return rowsAccepted;
+    }
+
+    // The exact per-year row counts, kept alongside the sketches
+    public YearHistogram getYearCounts() {
+        return yearCounts;
+    }
+
+    // Estimated distinct games; HyperLogLog can overshoot on small inputs,
+    // so estimates are capped at the exact number of rows they came from
+    public long distinctGames() {
+        return Math.min(games.estimate(), rowsAccepted);
+    }
+
+    // Estimated distinct games released in a year, 0 outside the range
+    public long distinctGames(int year) {
+        if (year < minYear || year > maxYear || gamesPerYear[year - minYear] == null) {
+            return 0;
+        }
+        return Math.min(gamesPerYear[year - minYear].estimate(), yearCounts.get(year));
+    }
+
+    public List<SpaceSaving.Entry> topCountries(int k) {
+        return countries.top(k);
+    }
+
+    // Genres in order of first appearance, plus OTHER_GENRE if it was needed
+    public List<String> genres() {
+        List<String> names = new ArrayList<>();
+        for (int code = 0; code < genres.size(); code++) {
+            names.add(genres.get(code));
+        }
+        if (otherGenres.getCount() > 0) {
+            names.add(OTHER_GENRE);
+        }
+        return names;
+    }
+
+    // Estimated TotalMoney at quantile q for a genre from genres()
+    public double moneyQuantile(String genre, double q) {
+        TDigest digest = digestOf(genre);
+        return digest != null ? digest.quantile(q) : Double.NaN;
+    }
+
+    public long moneyCount(String genre) {
+        TDigest digest = digestOf(genre);
+        return digest != null ? (long) digest.getCount() : 0;
+    }
+
+    private TDigest digestOf(String genre) {
+        int code = genres.find(genre);
+        if (code >= 0) {
+            return moneyByGenre.get(code);
+        }
+        return genre.equals(OTHER_GENRE) ? otherGenres : null;
+    }
+
+    // Writes the three estimates as CSV sections separated by a blank line,
+    // each headed by a # comment naming the method and its error bound
+    public void writeReport(Writer out, int topK) throws IOException {
+        out.write(String.format(Locale.ROOT, "# Distinct games per release year (HyperLogLog, +-%.1f%%)\n",
+                games.standardError() * 100));
+        out.write("Release Year,Games,Distinct Games\n");
+        for (int year = minYear; year <= maxYear; year++) {
+            if (yearCounts.get(year) > 0) {
+                out.write(year + "," + yearCounts.get(year) + "," + distinctGames(year) + "\n");
+            }
+        }
+        out.write("All," + rowsAccepted + "," + distinctGames() + "\n");
+
+        out.write(String.format(Locale.ROOT, "\n# Top %d countries by Top_Country_Earnings (Space-Saving, %d counters)\n",
+                topK, countries.getCapacity()));
+        out.write("Top Country,Top Country Earnings,Max Overestimate\n");
+        for (SpaceSaving.Entry entry : topCountries(topK)) {
+            EarningsExporter.writeCsvField(out, entry.getKey());
+            out.write("," + formatNumber(entry.getCount()) + "," + formatNumber(entry.getError()) + "\n");
+        }
+
+        out.write(String.format(Locale.ROOT, "\n# TotalMoney quantiles per genre (t-digest, compression %.0f)\n",
+                TDigest.DEFAULT_COMPRESSION));
+        out.write("Genre,Games,p50,p90,p99\n");
+        for (String genre : genres()) {
+            EarningsExporter.writeCsvField(out, genre);
+            out.write("," + moneyCount(genre) + ","
+                    + formatNumber(moneyQuantile(genre, 0.5)) + ","
+                    + formatNumber(moneyQuantile(genre, 0.9)) + ","
+                    + formatNumber(moneyQuantile(genre, 0.99)) + "\n");
+        }
+    }
+
+    private static String formatNumber(double value) {
+        return value == value ? String.format(Locale.ROOT, "%.2f", value) : "";
+    }
+}
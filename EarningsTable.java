@@ -0,0 +1,154 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Parsed rows of an earnings export, stored column by column. Numbers are
+// kept in primitive arrays and the text columns as FieldDictionary codes,
+// so the table can be aggregated, cached to disk and re-read without going
+// back to the CSV text.
+public class EarningsTable {
+
+    // Text columns kept as dictionary codes, in storage order
+    public static final EarningsAggregate.GroupBy[] TEXT_COLUMNS = {
+        EarningsAggregate.GroupBy.GENRE,
+        EarningsAggregate.GroupBy.TOP_COUNTRY,
+        EarningsAggregate.GroupBy.GAME_NAME
+    };
+
+    private static final EarningsAggregate.Measure[] MEASURES = EarningsAggregate.Measure.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Charset charset;
+    private int rowCount;
+    private long malformedRows;
+    private int[] releaseYears;
+    private final double[][] measures;
+    private final int[][] codes;
+    private final FieldDictionary[] dictionaries;
+
+    public EarningsTable(Charset charset) {
+        this.charset = charset;
+        this.releaseYears = new int[INITIAL_CAPACITY];
+        this.measures = new double[MEASURES.length][INITIAL_CAPACITY];
+        this.codes = new int[TEXT_COLUMNS.length][INITIAL_CAPACITY];
+        this.dictionaries = new FieldDictionary[TEXT_COLUMNS.length];
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new FieldDictionary(charset);
+        }
+    }
+
+    // Wraps already decoded columns, e.g. when loading a snapshot
+    EarningsTable(Charset charset, int rowCount, long malformedRows, int[] releaseYears, double[][] measures,
+            int[][] codes, FieldDictionary[] dictionaries) {
+        this.charset = charset;
+        this.rowCount = rowCount;
+        this.malformedRows = malformedRows;
+        this.releaseYears = releaseYears;
+        this.measures = measures;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+    }
+
+    // Appends the tokenizer's current row. Malformed rows (see
+    // EarningsAggregate.isWellFormed) are skipped and false is returned;
+    // unparseable cells are stored as CsvTokenizer.NOT_AN_INT or NaN.
+    public boolean append(CsvTokenizer row) {
+        if (!EarningsAggregate.isWellFormed(row)) {
+            malformedRows++;
+            return false;
+        }
+        ensureCapacity(rowCount + 1);
+
+        releaseYears[rowCount] = row.parseInt(EarningsAggregate.RELEASE_YEAR_COLUMN);
+        for (int m = 0; m < MEASURES.length; m++) {
+            measures[m][rowCount] = row.parseDouble(MEASURES[m].getColumn());
+        }
+        byte[] buf = row.buffer();
+        for (int t = 0; t < TEXT_COLUMNS.length; t++) {
+            int column = TEXT_COLUMNS[t].getColumn();
+            codes[t][rowCount] = dictionaries[t].codeOf(buf, row.fieldStart(column), row.fieldEnd(column));
+        }
+        rowCount++;
+        return true;
+    }
+
+    // Appends every row of other, translating its dictionary codes
+    public void appendAll(EarningsTable other) {
+        int n = other.rowCount;
+        ensureCapacity(rowCount + n);
+
+        System.arraycopy(other.releaseYears, 0, releaseYears, rowCount, n);
+        for (int m = 0; m < measures.length; m++) {
+            System.arraycopy(other.measures[m], 0, measures[m], rowCount, n);
+        }
+        for (int t = 0; t < codes.length; t++) {
+            FieldDictionary mine = dictionaries[t];
+            FieldDictionary theirs = other.dictionaries[t];
+            int[] remap = new int[theirs.size()];
+            for (int code = 0; code < remap.length; code++) {
+                remap[code] = mine.codeOf(theirs, code);
+            }
+            int[] source = other.codes[t];
+            int[] target = codes[t];
+            for (int i = 0; i < n; i++) {
+                target[rowCount + i] = remap[source[i]];
+            }
+        }
+        rowCount += n;
+        malformedRows += other.malformedRows;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // Rows skipped by append() for not being well formed; kept in snapshots
+    public long getMalformedRows() {
+        return malformedRows;
+    }
+
+    // Column accessors hand out the backing arrays; only the first
+    // getRowCount() entries are valid
+    int[] releaseYears() {
+        return releaseYears;
+    }
+
+    double[] measure(EarningsAggregate.Measure measure) {
+        return measures[measure.ordinal()];
+    }
+
+    int[] codes(int textColumn) {
+        return codes[textColumn];
+    }
+
+    FieldDictionary dictionary(int textColumn) {
+        return dictionaries[textColumn];
+    }
+
+    // Index of a group-by column in TEXT_COLUMNS, or -1 for the release year
+    static int textColumnIndex(EarningsAggregate.GroupBy groupBy) {
+        for (int t = 0; t < TEXT_COLUMNS.length; t++) {
+            if (TEXT_COLUMNS[t] == groupBy) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= releaseYears.length) {
+            return;
+        }
+        int capacity = Math.max(needed, releaseYears.length + (releaseYears.length >> 1));
+        releaseYears = Arrays.copyOf(releaseYears, capacity);
+        for (int m = 0; m < measures.length; m++) {
+            measures[m] = Arrays.copyOf(measures[m], capacity);
+        }
+        for (int t = 0; t < codes.length; t++) {
+            codes[t] = Arrays.copyOf(codes[t], capacity);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Maps the raw bytes of a text field (Genre, Top_Country, ...) to a small
+// int code. Lookups hash the bytes in place inside the tokenizer buffer, so
+// a value that has been seen before costs no allocation; only the first
+// occurrence is copied into the dictionary. Strings are decoded on demand.
+public class FieldDictionary {
+
+    private final Charset charset;
+
+    // Open-addressing table of code + 1 (0 marks an empty slot)
+    private int[] slots = new int[64];
+    private int[] hashes = new int[16];
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private byte[] bytes = new byte[256];
+    private int bytesUsed;
+    private String[] values = new String[16];
+    private int size;
+
+    public FieldDictionary(Charset charset) {
+        this.charset = charset;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the code for buf[start, end), adding it if it is new
+    public int codeOf(byte[] buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                break;
+            }
+            int code = entry - 1;
+            if (hashes[code] == hash && equalBytes(code, buf, start, end)) {
+                return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int code = append(buf, start, end, hash);
+        slots[slot] = code + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    // Returns the code of an existing value or -1, without adding it
+    public int find(String value) {
+        byte[] encoded = value.replace("\"", "\"\"").getBytes(charset);
+        return find(encoded, 0, encoded.length);
+    }
+
+    // Same for raw field bytes
+    public int find(byte[] buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int code = slots[slot] - 1;
+            if (hashes[code] == hash && equalBytes(code, buf, start, end)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    // Adds a decoded value, e.g. when copying from another dictionary
+    public int add(String value) {
+        byte[] encoded = value.replace("\"", "\"\"").getBytes(charset);
+        return codeOf(encoded, 0, encoded.length);
+    }
+
+    // Returns the code that other's code has in this dictionary
+    public int codeOf(FieldDictionary other, int otherCode) {
+        int start = other.offsets[otherCode];
+        return codeOf(other.bytes, start, start + other.lengths[otherCode]);
+    }
+
+    // Undecoded bytes of a value, as they appeared in the file
+    public byte[] rawBytes(int code) {
+        return Arrays.copyOfRange(bytes, offsets[code], offsets[code] + lengths[code]);
+    }
+
+    public String get(int code) {
+        String value = values[code];
+        if (value == null) {
+            value = decode(bytes, offsets[code], offsets[code] + lengths[code], charset);
+            values[code] = value;
+        }
+        return value;
+    }
+
+    // Decodes raw field bytes, turning "" back into a single quote
+    static String decode(byte[] buf, int start, int end, Charset charset) {
+        String value = new String(buf, start, end - start, charset);
+        return value.indexOf('"') >= 0 ? value.replace("\"\"", "\"") : value;
+    }
+
+    private int append(byte[] buf, int start, int end, int hash) {
+        int length = end - start;
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (bytesUsed + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesUsed + length));
+        }
+        System.arraycopy(buf, start, bytes, bytesUsed, length);
+        hashes[size] = hash;
+        offsets[size] = bytesUsed;
+        lengths[size] = length;
+        bytesUsed += length;
+        return size++;
+    }
+
+    private boolean equalBytes(int code, byte[] buf, int start, int end) {
+        int length = end - start;
+        if (lengths[code] != length) {
+            return false;
+        }
+        int offset = offsets[code];
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] bigger = new int[slots.length * 2];
+        int mask = bigger.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = hashes[code] & mask;
+            while (bigger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            bigger[slot] = code + 1;
+        }
+        slots = bigger;
+    }
+
+    private static int hash(byte[] buf, int start, int end) {
+        int h = 1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        // Spread the bits so the low-bit mask sees the whole hash
+        return h ^ (h >>> 16);
+    }
+}
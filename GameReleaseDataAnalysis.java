@@ -1,12 +1,24 @@
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.swing.Timer;
 
 public class GameReleaseDataAnalysis extends JFrame {
@@ -18,13 +30,44 @@ public class GameReleaseDataAnalysis extends JFrame {
     private JButton processButton;
     private JButton exportButton;
     private JButton browseButton;
+    private JButton cancelButton;
     private JTextField filePathField;
+    private JProgressBar progressBar;
     private JToggleButton themeToggle;
+    private JToggleButton watchToggle;
+    private JToggleButton statsToggle;
+    private Timer statsTimer;
+    private JComboBox<EarningsAggregate.GroupBy> groupByBox;
+    private JComboBox<ViewOption> aggregateBox;
+    private JSpinner fromYearSpinner;
+    private JSpinner toYearSpinner;
+    private JComboBox<String> genreFilterBox;
+    private JComboBox<String> countryFilterBox;
+    private JSpinner minPrizeSpinner;
     private CustomBarChart barChart;
     
-    // Data storage
-    private HashMap<Integer, Integer> releaseYearData;
-    private File selectedFile;
+    // Data storage: one index per loaded table, a single one unless
+    // several files were opened
+    private List<EarningsIndex> earningsIndexes;
+    private EarningsFilter activeFilter = EarningsFilter.DEFAULT;
+    private boolean updatingFilters;
+    private EarningsAggregate earningsData;
+    private List<File> selectedFiles = Collections.emptyList();
+    private Map<File, MultiFileIngest.Part> fileParts = new HashMap<>();
+    private long ingestedBytes;
+    private CsvIngestWorker ingestWorker;
+    private CsvTailWatcher tailWatcher;
+    private final SnapshotCache snapshotCache = SnapshotCache.defaultCache();
+    
+    // Default release year filter
+    private static final int MIN_YEAR = EarningsAggregate.DEFAULT_MIN_YEAR;
+    private static final int MAX_YEAR = EarningsAggregate.DEFAULT_MAX_YEAR;
+    
+    private static final String ALL_GENRES = "All genres";
+    private static final String ALL_COUNTRIES = "All countries";
+    
+    // Same decoding FileReader used for the text columns
+    private static final Charset CSV_CHARSET = Charset.defaultCharset();
     
     // Theme colors
     private Color lightBackground = Color.WHITE;
@@ -80,17 +123,51 @@ public class GameReleaseDataAnalysis extends JFrame {
         processButton = new JButton("Process Data");
         exportButton = new JButton("Export Data");
         exportButton.setEnabled(false);
+        watchToggle = new JToggleButton("Watch File");
+        watchToggle.setToolTipText("Add rows appended to the file to the chart as they arrive");
+        
+        // View selection; switching views reuses the loaded aggregate
+        groupByBox = new JComboBox<>(EarningsAggregate.GroupBy.values());
+        aggregateBox = new JComboBox<>(ViewOption.all());
+        
+        // Row filters; changing one re-aggregates the loaded table in memory
+        fromYearSpinner = new JSpinner(new SpinnerNumberModel(MIN_YEAR, 1900, 2100, 1));
+        toYearSpinner = new JSpinner(new SpinnerNumberModel(MAX_YEAR, 1900, 2100, 1));
+        fromYearSpinner.setEditor(new JSpinner.NumberEditor(fromYearSpinner, "#"));
+        toYearSpinner.setEditor(new JSpinner.NumberEditor(toYearSpinner, "#"));
+        genreFilterBox = new JComboBox<>(new String[] {ALL_GENRES});
+        countryFilterBox = new JComboBox<>(new String[] {ALL_COUNTRIES});
+        countryFilterBox.setPrototypeDisplayValue("Korea, Republic of");
+        minPrizeSpinner = new JSpinner(new SpinnerNumberModel(0.0, 0.0, 1e12, 10000.0));
+        minPrizeSpinner.setEditor(new JSpinner.NumberEditor(minPrizeSpinner, "#,##0"));
+        minPrizeSpinner.setPreferredSize(new Dimension(110, minPrizeSpinner.getPreferredSize().height));
+        
+        // Ingest progress
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Idle");
+        progressBar.setPreferredSize(new Dimension(400, 22));
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
         
         // Theme toggle
         JPanel themePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         themeToggle = new JToggleButton("🌙 Dark Mode");
+        statsToggle = new JToggleButton("Stats");
+        statsToggle.setToolTipText("Show ingest, aggregation and paint timings over the chart");
+        statsTimer = new Timer(1000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                barChart.setOverlay(EarningsMetrics.get().summary());
+            }
+        });
         
         // Initialize the custom bar chart
         barChart = new CustomBarChart();
         barChart.setPreferredSize(new Dimension(800, 500));
         
         // Initialize data storage
-        releaseYearData = new HashMap<>();
+        earningsData = new EarningsAggregate(MIN_YEAR, MAX_YEAR, CSV_CHARSET);
         
         // Add action listeners
         browseButton.addActionListener(new ActionListener() {
@@ -114,6 +191,53 @@ public class GameReleaseDataAnalysis extends JFrame {
             }
         });
         
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                cancelProcessing();
+            }
+        });
+        
+        ActionListener viewListener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (earningsData != null && !earningsData.isEmpty()) {
+                    updateChart();
+                }
+            }
+        };
+        groupByBox.addActionListener(viewListener);
+        aggregateBox.addActionListener(viewListener);
+        
+        ChangeListener filterSpinnerListener = new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                filterChanged();
+            }
+        };
+        fromYearSpinner.addChangeListener(filterSpinnerListener);
+        toYearSpinner.addChangeListener(filterSpinnerListener);
+        minPrizeSpinner.addChangeListener(filterSpinnerListener);
+        ActionListener filterBoxListener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                filterChanged();
+            }
+        };
+        genreFilterBox.addActionListener(filterBoxListener);
+        countryFilterBox.addActionListener(filterBoxListener);
+        
+        watchToggle.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                if (e.getStateChange() == ItemEvent.SELECTED) {
+                    startWatching();
+                } else {
+                    stopWatching();
+                }
+            }
+        });
+        
         themeToggle.addItemListener(new ItemListener() {
             @Override
             public void itemStateChanged(ItemEvent e) {
@@ -122,6 +246,19 @@ public class GameReleaseDataAnalysis extends JFrame {
                 applyTheme();
             }
         });
+        
+        statsToggle.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                if (e.getStateChange() == ItemEvent.SELECTED) {
+                    barChart.setOverlay(EarningsMetrics.get().summary());
+                    statsTimer.start();
+                } else {
+                    statsTimer.stop();
+                    barChart.setOverlay(null);
+                }
+            }
+        });
     }
     
     private void layoutComponents() {
@@ -134,10 +271,35 @@ public class GameReleaseDataAnalysis extends JFrame {
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
         actionPanel.add(processButton);
         actionPanel.add(exportButton);
+        actionPanel.add(watchToggle);
+        
+        // Set up view panel
+        JPanel viewPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        viewPanel.add(new JLabel("Group by:"));
+        viewPanel.add(groupByBox);
+        viewPanel.add(new JLabel("Show:"));
+        viewPanel.add(aggregateBox);
+        
+        // Set up filter panel
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 6, 0));
+        filterPanel.add(new JLabel("Years:"));
+        filterPanel.add(fromYearSpinner);
+        filterPanel.add(new JLabel("to"));
+        filterPanel.add(toYearSpinner);
+        filterPanel.add(genreFilterBox);
+        filterPanel.add(countryFilterBox);
+        filterPanel.add(new JLabel("Min prize pool:"));
+        filterPanel.add(minPrizeSpinner);
+        
+        // Set up progress panel
+        JPanel progressPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        progressPanel.add(progressBar);
+        progressPanel.add(cancelButton);
         
         // Set up theme panel
         JPanel themePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         themePanel.add(themeToggle);
+        themePanel.add(statsToggle);
         
         // Add title and panels to button panel
         JLabel titleLabel = new JLabel("Distribution of Games by Release Year", JLabel.CENTER);
@@ -148,6 +310,12 @@ public class GameReleaseDataAnalysis extends JFrame {
         buttonPanel.add(filePanel);
         buttonPanel.add(Box.createVerticalStrut(10));
         buttonPanel.add(actionPanel);
+        buttonPanel.add(Box.createVerticalStrut(10));
+        buttonPanel.add(viewPanel);
+        buttonPanel.add(Box.createVerticalStrut(5));
+        buttonPanel.add(filterPanel);
+        buttonPanel.add(Box.createVerticalStrut(10));
+        buttonPanel.add(progressPanel);
         buttonPanel.add(Box.createVerticalStrut(5));
         buttonPanel.add(themePanel);
         
@@ -197,6 +365,12 @@ public class GameReleaseDataAnalysis extends JFrame {
         processButton.setForeground(Color.BLACK);
         exportButton.setBackground(currentButtonBg);
         exportButton.setForeground(Color.BLACK);
+        watchToggle.setBackground(currentButtonBg);
+        watchToggle.setForeground(Color.BLACK);
+        statsToggle.setBackground(currentButtonBg);
+        statsToggle.setForeground(Color.BLACK);
+        cancelButton.setBackground(currentButtonBg);
+        cancelButton.setForeground(Color.BLACK);
         
         // Update chart with theme colors
         barChart.setThemeColors(bgColor, textColor);
@@ -209,87 +383,389 @@ public class GameReleaseDataAnalysis extends JFrame {
         JFileChooser fileChooser = new JFileChooser();
         FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files", "csv");
         fileChooser.setFileFilter(filter);
+        // Several exports, or whole directories of them, are analyzed together
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
         
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            selectedFile = fileChooser.getSelectedFile();
-            filePathField.setText(selectedFile.getPath());
+            List<File> files = new ArrayList<>();
+            for (File file : fileChooser.getSelectedFiles()) {
+                if (file.isDirectory()) {
+                    files.addAll(csvFilesIn(file));
+                } else {
+                    files.add(file);
+                }
+            }
+            if (files.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "The selection contains no CSV files.",
+                        "No File Selected", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            stopWatching();
+            selectedFiles = files;
+            filePathField.setText(files.size() == 1 ? files.get(0).getPath()
+                    : files.size() + " files: " + files.get(0).getParent());
+            filePathField.setToolTipText(files.size() == 1 ? null : files.toString());
+            // Watching follows a single file only
+            watchToggle.setEnabled(files.size() == 1);
+            if (files.size() != 1) {
+                watchToggle.setSelected(false);
+            }
+        }
+    }
+    
+    // CSV files directly inside a directory, sorted by name
+    private static List<File> csvFilesIn(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".csv");
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
         }
+        Arrays.sort(files);
+        return Arrays.asList(files);
     }
     
     private void processData() {
-        if (selectedFile == null) {
+        if (selectedFiles.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please select a CSV file first.", 
                     "No File Selected", JOptionPane.WARNING_MESSAGE);
             return;
         }
         
+        if (ingestWorker != null && !ingestWorker.isDone()) {
+            return;
+        }
+        
+        // A full re-read replaces whatever the watcher has added so far
+        stopWatching();
+        
+        // Parse the file on a background thread so the window stays responsive
+        processButton.setEnabled(false);
+        browseButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        progressBar.setValue(0);
+        progressBar.setString("Starting...");
+        
+        ingestWorker = new CsvIngestWorker(selectedFiles, currentFilter());
+        ingestWorker.execute();
+    }
+    
+    private void cancelProcessing() {
+        if (ingestWorker != null && !ingestWorker.isDone()) {
+            ingestWorker.cancel(true);
+        }
+    }
+    
+    private void ingestFinished(CsvIngestWorker worker) {
+        processButton.setEnabled(true);
+        browseButton.setEnabled(true);
+        cancelButton.setEnabled(false);
+        
+        if (worker.isCancelled()) {
+            progressBar.setValue(0);
+            progressBar.setString("Cancelled");
+            return;
+        }
+        
+        EarningsAggregate result;
         try {
-            // Read and parse CSV file
-            BufferedReader reader = new BufferedReader(new FileReader(selectedFile));
-            String line;
-            releaseYearData.clear();
-            
-            // Skip header line
-            reader.readLine();
-            
-            while ((line = reader.readLine()) != null) {
-                String[] columns = line.split(",");
-                if (columns.length > 8) { // Adjust this based on your actual CSV structure
-                    try {
-                        int releaseYear = Integer.parseInt(columns[8].trim());
-                        
-                        // Filter years in the appropriate range (1993-2020)
-                        if (releaseYear >= 1993 && releaseYear <= 2020) {
-                            releaseYearData.put(releaseYear, releaseYearData.getOrDefault(releaseYear, 0) + 1);
+            result = worker.get();
+        } catch (CancellationException e) {
+            progressBar.setString("Cancelled");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            progressBar.setString("Failed");
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            JOptionPane.showMessageDialog(this, 
+                    "Error reading CSV file: " + cause.getMessage(),
+                    "File Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // Only the finished aggregate is handed over to the EDT
+        earningsIndexes = worker.getIndexes();
+        ingestedBytes = worker.getBytesIngested();
+        earningsData = result;
+        activeFilter = worker.getFilter();
+        populateFilterChoices();
+        if (!currentFilter().equals(activeFilter)) {
+            // A genre or country filter that the new data lacks was reset
+            applyFilter(currentFilter());
+        }
+        if (watchToggle.isSelected() && startWatching()) {
+            // A reload for the watcher has started; its own ingestFinished takes over
+            return;
+        }
+        progressBar.setValue(progressBar.getMaximum());
+        List<MultiFileIngest.Part> parts = worker.getParts();
+        // The parts hold the loaded tables; they are also kept so the next
+        // run only parses files that are new or changed
+        fileParts = new HashMap<>();
+        if (parts != null) {
+            for (MultiFileIngest.Part part : parts) {
+                fileParts.put(part.getFile(), part);
+            }
+            progressBar.setString("Done - " + worker.getRowsRead() + " rows from " + parts.size() + " files"
+                    + (worker.getFilesReused() > 0 ? " (" + worker.getFilesReused() + " cached)" : ""));
+        } else {
+            progressBar.setString("Done - " + worker.getRowsRead() + " rows"
+                    + (worker.isFromCache() ? " (cached)" : ""));
+        }
+        long skipped = malformedRows() + result.getRowsBadYear() + result.getRowsOutOfRange();
+        if (skipped > 0) {
+            // Broken down by the Stats overlay, and row by row by EarningsBatch --quarantine
+            progressBar.setString(progressBar.getString() + ", " + skipped + " skipped");
+        }
+        
+        if (earningsData.isEmpty()) {
+            JOptionPane.showMessageDialog(this, 
+                    "No valid release year data found in the CSV file.",
+                    "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        // Create and display chart
+        updateChart();
+        
+        // Enable export button
+        exportButton.setEnabled(true);
+    }
+    
+    // Returns true when the file is being loaded again first, see below
+    private boolean startWatching() {
+        if (tailWatcher != null || earningsIndexes == null || earningsIndexes.size() != 1 || selectedFiles.size() != 1
+                || (ingestWorker != null && !ingestWorker.isDone())) {
+            // Starts once the current ingest has finished
+            return false;
+        }
+        if (!ingestWorker.endsOnCompleteRow()) {
+            // The last load may have taken in a row that is still being
+            // written; load the file again the way the watcher reads it,
+            // which starts watching once done
+            processData();
+            return true;
+        }
+        
+        try {
+            final CsvTailWatcher[] self = new CsvTailWatcher[1];
+            self[0] = new CsvTailWatcher(selectedFiles.get(0), ingestedBytes, CSV_CHARSET, new CsvTailWatcher.Listener() {
+                @Override
+                public void rowsAppended(final EarningsTable delta, final long newOffset) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Ignore deltas from a watcher that has since been stopped
+                            if (tailWatcher == self[0]) {
+                                applyAppendedRows(delta, newOffset);
+                            }
                         }
-                    } catch (NumberFormatException e) {
-                        // Skip rows with non-numeric release years
-                    }
+                    });
                 }
-            }
-            reader.close();
-            
-            if (releaseYearData.isEmpty()) {
-                JOptionPane.showMessageDialog(this, 
-                        "No valid release year data found in the CSV file.",
-                        "No Data", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            
-            // Create and display chart
-            updateChart();
-            
-            // Enable export button
-            exportButton.setEnabled(true);
-            
+                
+                @Override
+                public void fileReset() {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (tailWatcher == self[0]) {
+                                processData();
+                            }
+                        }
+                    });
+                }
+                
+                @Override
+                public void watchFailed(final IOException e) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (tailWatcher == self[0]) {
+                                watchToggle.setSelected(false);
+                                JOptionPane.showMessageDialog(GameReleaseDataAnalysis.this,
+                                        "Stopped watching the file: " + e.getMessage(),
+                                        "Watch Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        }
+                    });
+                }
+            });
+            tailWatcher = self[0];
+            tailWatcher.start();
+            progressBar.setString("Watching " + selectedFiles.get(0).getName());
         } catch (IOException e) {
+            watchToggle.setSelected(false);
             JOptionPane.showMessageDialog(this, 
-                    "Error reading CSV file: " + e.getMessage(),
-                    "File Error", JOptionPane.ERROR_MESSAGE);
+                    "Cannot watch the file: " + e.getMessage(),
+                    "Watch Error", JOptionPane.ERROR_MESSAGE);
         }
+        return false;
     }
     
-    private void updateChart() {
-        // Sort the years
-        List<Integer> years = new ArrayList<>(releaseYearData.keySet());
-        Collections.sort(years);
-        
-        // Prepare data for chart
-        int maxValue = 0;
-        Map<String, Integer> data = new LinkedHashMap<>();
-        
-        for (Integer year : years) {
-            int value = releaseYearData.get(year);
-            data.put(year.toString(), value);
-            if (value > maxValue) {
-                maxValue = value;
+    private void stopWatching() {
+        if (tailWatcher != null) {
+            try {
+                tailWatcher.close();
+            } catch (IOException e) {
+                // Nothing left to release
             }
+            tailWatcher = null;
+        }
+    }
+    
+    // Folds rows appended to the file into the loaded table and aggregate;
+    // the cost depends on the number of new rows, not on the file size
+    private void applyAppendedRows(EarningsTable delta, long newOffset) {
+        EarningsIndex index = earningsIndexes.get(0);
+        EarningsTable table = index.getTable();
+        int from = table.getRowCount();
+        table.appendAll(delta);
+        long accepted = earningsData.getRowsAccepted();
+        long badYear = earningsData.getRowsBadYear();
+        long outOfRange = earningsData.getRowsOutOfRange();
+        long start = System.nanoTime();
+        activeFilter.addRows(earningsData, index, from, table.getRowCount());
+        EarningsMetrics.get().recordAggregate(earningsData.getRowsAccepted() - accepted,
+                earningsData.getRowsBadYear() - badYear, earningsData.getRowsOutOfRange() - outOfRange,
+                System.nanoTime() - start);
+        ingestedBytes = newOffset;
+        progressBar.setString("Watching " + selectedFiles.get(0).getName() + " - "
+                + table.getRowCount() + " rows (+" + delta.getRowCount() + ")");
+        
+        if (earningsData.isEmpty()) {
+            return;
+        }
+        exportButton.setEnabled(true);
+        refreshChart();
+    }
+    
+    private EarningsFilter currentFilter() {
+        int from = (Integer) fromYearSpinner.getValue();
+        int to = (Integer) toYearSpinner.getValue();
+        String genre = genreFilterBox.getSelectedIndex() > 0 ? (String) genreFilterBox.getSelectedItem() : null;
+        String country = countryFilterBox.getSelectedIndex() > 0 ? (String) countryFilterBox.getSelectedItem() : null;
+        double minPrizePool = ((Number) minPrizeSpinner.getValue()).doubleValue();
+        return new EarningsFilter(Math.min(from, to), Math.max(from, to), genre, country, minPrizePool);
+    }
+    
+    private void filterChanged() {
+        if (updatingFilters || earningsIndexes == null || (ingestWorker != null && !ingestWorker.isDone())) {
+            return;
+        }
+        EarningsFilter filter = currentFilter();
+        if (!filter.equals(activeFilter)) {
+            applyFilter(filter);
+        }
+    }
+    
+    // Re-aggregates the loaded table under a new filter; the file is not read again
+    private void applyFilter(EarningsFilter filter) {
+        long start = System.nanoTime();
+        earningsData = filter.aggregate(earningsIndexes);
+        long nanos = System.nanoTime() - start;
+        EarningsMetrics.get().recordRefilter(nanos);
+        activeFilter = filter;
+        
+        progressBar.setString(String.format("Filter: %,d of %,d rows in %.1f ms",
+                earningsData.getRowsAccepted(), loadedRows(), nanos / 1e6));
+        exportButton.setEnabled(!earningsData.isEmpty());
+        refreshChart();
+    }
+    
+    private long loadedRows() {
+        long rows = 0;
+        for (EarningsIndex index : earningsIndexes) {
+            rows += index.getTable().getRowCount();
+        }
+        return rows;
+    }
+    
+    private long malformedRows() {
+        long rows = 0;
+        for (EarningsIndex index : earningsIndexes) {
+            rows += index.getTable().getMalformedRows();
+        }
+        return rows;
+    }
+    
+    // Fills the genre and country boxes with the values of the loaded tables,
+    // keeping the current choice where it still exists
+    private void populateFilterChoices() {
+        updatingFilters = true;
+        try {
+            fillChoices(genreFilterBox, ALL_GENRES, EarningsAggregate.GroupBy.GENRE);
+            fillChoices(countryFilterBox, ALL_COUNTRIES, EarningsAggregate.GroupBy.TOP_COUNTRY);
+        } finally {
+            updatingFilters = false;
+        }
+    }
+    
+    private void fillChoices(JComboBox<String> box, String all, EarningsAggregate.GroupBy column) {
+        Object selected = box.getSelectedItem();
+        Set<String> distinct = new HashSet<>();
+        for (EarningsIndex index : earningsIndexes) {
+            FieldDictionary dictionary = index.getTable().dictionary(EarningsTable.textColumnIndex(column));
+            for (int code = 0; code < dictionary.size(); code++) {
+                distinct.add(dictionary.get(code));
+            }
+        }
+        List<String> values = new ArrayList<>(distinct);
+        Collections.sort(values, String.CASE_INSENSITIVE_ORDER);
+        box.removeAllItems();
+        box.addItem(all);
+        for (String value : values) {
+            box.addItem(value);
+        }
+        box.setSelectedItem(values.contains(selected) ? selected : all);
+    }
+    
+    private String chartTitle(EarningsAggregate.GroupBy groupBy, ViewOption option) {
+        String filter = activeFilter.describe();
+        return option + " by " + groupBy + (filter.isEmpty() ? "" : " (" + filter + ")");
+    }
+    
+    // Shows the current view without restarting the animation, e.g. after
+    // new rows arrived or the filter changed
+    private void refreshChart() {
+        long start = System.nanoTime();
+        EarningsAggregate.GroupBy groupBy = (EarningsAggregate.GroupBy) groupByBox.getSelectedItem();
+        ViewOption option = (ViewOption) aggregateBox.getSelectedItem();
+        Map<String, Double> data = earningsData.view(groupBy, option.function, option.measure);
+        double maxValue = 0;
+        for (double value : data.values()) {
+            maxValue = Math.max(maxValue, value);
+        }
+        String view = chartTitle(groupBy, option);
+        barChart.setLabels(view, groupBy.getLabel(), option.toString());
+        barChart.updateBars(data, maxValue);
+        EarningsMetrics.get().recordChartUpdate(view, data.size(), System.nanoTime() - start);
+    }
+    
+    private void updateChart() {
+        long start = System.nanoTime();
+        EarningsAggregate.GroupBy groupBy = (EarningsAggregate.GroupBy) groupByBox.getSelectedItem();
+        ViewOption option = (ViewOption) aggregateBox.getSelectedItem();
+        
+        // Prepare data for chart; years come out in order, other groups by value
+        Map<String, Double> data = earningsData.view(groupBy, option.function, option.measure);
+        double maxValue = 0;
+        for (double value : data.values()) {
+            maxValue = Math.max(maxValue, value);
         }
         
         // Set data and animate
+        String view = chartTitle(groupBy, option);
+        barChart.setLabels(view, groupBy.getLabel(), option.toString());
         barChart.setData(data, maxValue);
         barChart.startAnimation();
+        EarningsMetrics.get().recordChartUpdate(view, data.size(), System.nanoTime() - start);
     }
     
     private void exportData() {
@@ -297,30 +773,52 @@ public class GameReleaseDataAnalysis extends JFrame {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save Data");
         fileChooser.setSelectedFile(new File("release_year_data.csv"));
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files", "csv");
-        fileChooser.setFileFilter(filter);
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        Map<FileNameExtensionFilter, EarningsExporter.Format> formats = new LinkedHashMap<>();
+        for (EarningsExporter.Format format : EarningsExporter.Format.values()) {
+            FileNameExtensionFilter filter = new FileNameExtensionFilter(
+                    format.getLabel() + " (*." + format.getExtension() + ")", format.getExtension());
+            formats.put(filter, format);
+            fileChooser.addChoosableFileFilter(filter);
+        }
+        fileChooser.setFileFilter(formats.keySet().iterator().next());
+        
+        // Export options next to the file list
+        EarningsAggregate.GroupBy groupBy = (EarningsAggregate.GroupBy) groupByBox.getSelectedItem();
+        JCheckBox allStatisticsBox = new JCheckBox("All statistics per " + groupBy.getLabel().toLowerCase());
+        allStatisticsBox.setToolTipText("Row count and count/sum/min/max/average of every column, "
+                + "instead of only the chart values");
+        JCheckBox gzipBox = new JCheckBox("Compress (gzip)");
+        JPanel options = new JPanel();
+        options.setLayout(new BoxLayout(options, BoxLayout.Y_AXIS));
+        options.setBorder(BorderFactory.createTitledBorder("Options"));
+        options.add(allStatisticsBox);
+        options.add(gzipBox);
+        fileChooser.setAccessory(options);
         
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
+            EarningsExporter.Format format = formats.get(fileChooser.getFileFilter());
+            boolean gzip = gzipBox.isSelected();
             
-            // Ensure file has .csv extension
-            if (!file.getName().toLowerCase().endsWith(".csv")) {
-                file = new File(file.getAbsolutePath() + ".csv");
+            // Ensure file has the format's extension
+            String extension = "." + format.getExtension() + (gzip ? ".gz" : "");
+            if (!file.getName().toLowerCase().endsWith(extension)) {
+                file = new File(file.getAbsolutePath() + extension);
             }
             
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
             try {
-                FileWriter writer = new FileWriter(file);
-                writer.write("Release Year,Number of Games\n");
-                
-                List<Integer> years = new ArrayList<>(releaseYearData.keySet());
-                Collections.sort(years);
-                
-                for (Integer year : years) {
-                    writer.write(year + "," + releaseYearData.get(year) + "\n");
+                try (WritableByteChannel channel = EarningsExporter.openFile(file, gzip)) {
+                    if (allStatisticsBox.isSelected()) {
+                        EarningsExporter.writeAll(channel, format, earningsData, groupBy);
+                    } else {
+                        ViewOption option = (ViewOption) aggregateBox.getSelectedItem();
+                        EarningsExporter.writeView(channel, format, earningsData, groupBy,
+                                option.function, option.measure);
+                    }
                 }
-                
-                writer.close();
                 JOptionPane.showMessageDialog(this, 
                         "Data exported successfully to " + file.getName(),
                         "Export Successful", JOptionPane.INFORMATION_MESSAGE);
@@ -329,177 +827,329 @@ public class GameReleaseDataAnalysis extends JFrame {
                 JOptionPane.showMessageDialog(this, 
                         "Error exporting data: " + e.getMessage(),
                         "Export Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                setCursor(Cursor.getDefaultCursor());
             }
         }
     }
     
-    // Custom Bar Chart Implementation
-    private class CustomBarChart extends JPanel {
-        private Map<String, Integer> data;
-        private Map<String, Double> currentHeights;
-        private int maxValue;
-        private Color barColor = new Color(75, 192, 192);
-        private Color backgroundColor = Color.WHITE;
-        private Color textColor = Color.BLACK;
-        private Timer animationTimer;
-        private static final int ANIMATION_DURATION = 15000; // 15 seconds in milliseconds
-        private static final int ANIMATION_STEPS = 150; // More steps for smoother 15-second animation
-        private static final int PADDING = 30;
-        private static final int BOTTOM_PADDING = 60;
-        private static final int LEFT_PADDING = 60;
-        
-        public CustomBarChart() {
-            this.data = new LinkedHashMap<>();
-            this.currentHeights = new LinkedHashMap<>();
-            setBackground(backgroundColor);
-        }
-        
-        public void setThemeColors(Color backgroundColor, Color textColor) {
-            this.backgroundColor = backgroundColor;
-            this.textColor = textColor;
-            setBackground(backgroundColor);
-            repaint();
-        }
-        
-        public void setData(Map<String, Integer> data, int maxValue) {
-            this.data = data;
-            this.maxValue = maxValue;
-            this.currentHeights = new LinkedHashMap<>();
-            
-            // Initialize heights to zero for animation
-            for (String key : data.keySet()) {
-                currentHeights.put(key, 0.0);
+    // One entry of the "Show" box: an aggregate function applied to a measure
+    private static class ViewOption {
+        final EarningsAggregate.Function function;
+        final EarningsAggregate.Measure measure;
+        
+        ViewOption(EarningsAggregate.Function function, EarningsAggregate.Measure measure) {
+            this.function = function;
+            this.measure = measure;
+        }
+        
+        static ViewOption[] all() {
+            List<ViewOption> options = new ArrayList<>();
+            options.add(new ViewOption(EarningsAggregate.Function.COUNT, EarningsAggregate.Measure.TOTAL_MONEY));
+            for (EarningsAggregate.Function function : EarningsAggregate.Function.values()) {
+                if (function == EarningsAggregate.Function.COUNT) {
+                    continue;
+                }
+                for (EarningsAggregate.Measure measure : EarningsAggregate.Measure.values()) {
+                    options.add(new ViewOption(function, measure));
+                }
             }
-            
-            repaint();
+            return options.toArray(new ViewOption[0]);
         }
         
-        public void startAnimation() {
-            if (animationTimer != null && animationTimer.isRunning()) {
-                animationTimer.stop();
+        @Override
+        public String toString() {
+            return EarningsExporter.viewLabel(function, measure);
+        }
+    }
+    
+    // Snapshot of ingest progress published from the worker thread
+    private static class IngestProgress {
+        final long bytesRead;
+        final long totalBytes;
+        final long rowsRead;
+        final double rowsPerSecond;
+        
+        IngestProgress(long bytesRead, long totalBytes, long rowsRead, double rowsPerSecond) {
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+            this.rowsRead = rowsRead;
+            this.rowsPerSecond = rowsPerSecond;
+        }
+    }
+    
+    // Loads the CSV (or its cached snapshot) off the EDT and aggregates it
+    private class CsvIngestWorker extends SwingWorker<EarningsAggregate, IngestProgress> {
+        private static final long PUBLISH_INTERVAL_NANOS = 100000000L; // 100 ms
+        private static final long PARALLEL_THRESHOLD_BYTES = 64L * 1024 * 1024;
+        
+        private final List<File> files;
+        private final File file;
+        private final Map<File, MultiFileIngest.Part> previousParts;
+        private final EarningsFilter filter;
+        private final boolean watching;
+        private volatile List<EarningsIndex> indexes;
+        private volatile long rowsRead;
+        private volatile boolean fromCache;
+        private volatile long bytesIngested;
+        private volatile boolean endsOnCompleteRow;
+        private volatile int filesReused;
+        private volatile List<MultiFileIngest.Part> parts;
+        private long readNanos;
+        
+        CsvIngestWorker(List<File> files, EarningsFilter filter) {
+            this.files = files;
+            this.file = files.get(0);
+            this.previousParts = new HashMap<>(fileParts);
+            this.filter = filter;
+            this.watching = watchToggle.isSelected() && files.size() == 1;
+        }
+        
+        EarningsFilter getFilter() {
+            return filter;
+        }
+        
+        List<EarningsIndex> getIndexes() {
+            return indexes;
+        }
+        
+        long getRowsRead() {
+            return rowsRead;
+        }
+        
+        boolean isFromCache() {
+            return fromCache;
+        }
+        
+        // Bytes of the file covered by the table; watch mode continues from here
+        long getBytesIngested() {
+            return bytesIngested;
+        }
+        
+        // True when the bytes ingested are known to end with a complete row,
+        // as CsvTailWatcher requires. Only the sequential path checks this.
+        boolean endsOnCompleteRow() {
+            return endsOnCompleteRow;
+        }
+        
+        // Per-file partials of a multi-file run, null for a single file
+        List<MultiFileIngest.Part> getParts() {
+            return parts;
+        }
+        
+        int getFilesReused() {
+            return filesReused;
+        }
+        
+        @Override
+        protected EarningsAggregate doInBackground() throws Exception {
+            if (files.size() > 1) {
+                return multiFileIngest();
+            }
+            
+            EarningsMetrics metrics = EarningsMetrics.get();
+            long start = System.nanoTime();
+            
+            // An unchanged file comes straight back from its snapshot. A file
+            // to be watched is read sequentially instead, which stops at its
+            // last complete row as the watcher does.
+            EarningsTable table = watching ? null : snapshotCache.load(file, CSV_CHARSET);
+            if (table != null) {
+                fromCache = true;
+                rowsRead = table.getRowCount();
+                bytesIngested = file.length();
+                metrics.recordIngest(file.getName(), bytesIngested, rowsRead, table.getMalformedRows(),
+                        System.nanoTime() - start, 0, true);
+            } else {
+                int cores = Runtime.getRuntime().availableProcessors();
+                if (!watching && file.length() >= PARALLEL_THRESHOLD_BYTES && cores > 1) {
+                    table = parallelIngest(cores);
+                } else {
+                    table = sequentialIngest();
+                }
+                if (isCancelled()) {
+                    return null;
+                }
+                long elapsed = System.nanoTime() - start;
+                metrics.recordIngest(file.getName(), bytesIngested, rowsRead, table.getMalformedRows(),
+                        readNanos, elapsed - readNanos, false);
+                try {
+                    // Unless a row still being written was left out
+                    if (bytesIngested == file.length()) {
+                        snapshotCache.store(file, table);
+                    }
+                } catch (IOException e) {
+                    // The cache is only an accelerator; carry on without it
+                }
             }
             
-            final int steps = ANIMATION_STEPS;
-            final int delay = ANIMATION_DURATION / steps;
+            // Rows outside the year range or with non-numeric years are left out here
+            EarningsIndex index = new EarningsIndex(table);
+            indexes = Collections.singletonList(index);
+            long aggregateStart = System.nanoTime();
+            EarningsAggregate aggregate = filter.aggregate(index);
+            metrics.recordAggregate(aggregate.getRowsAccepted(), aggregate.getRowsBadYear(),
+                    aggregate.getRowsOutOfRange(), System.nanoTime() - aggregateStart);
+            return aggregate;
+        }
+        
+        private EarningsTable sequentialIngest() throws IOException {
+            EarningsTable table = new EarningsTable(CSV_CHARSET);
+            long totalBytes = file.length();
+            long startTime = System.nanoTime();
+            long lastPublish = startTime;
+            long rows = 0;
             
-            animationTimer = new Timer(delay, new ActionListener() {
-                private int step = 0;
+            // End of the last row followed by a line break
+            long complete = 0;
+            CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+            try {
+                // Skip header line
+                if (tokenizer.nextRow() && tokenizer.rowTerminated()) {
+                    complete = tokenizer.bytesConsumed();
+                }
                 
-                @Override
-                public void actionPerformed(ActionEvent e) {
-                    if (step >= steps) {
-                        // Animation complete
-                        for (String key : data.keySet()) {
-                            currentHeights.put(key, (double) data.get(key));
-                        }
-                        ((Timer) e.getSource()).stop();
-                    } else {
-                        // Update heights for each bar
-                        for (String key : data.keySet()) {
-                            double targetHeight = data.get(key);
-                            double newHeight = targetHeight * ((double) step / steps);
-                            currentHeights.put(key, newHeight);
+                while (tokenizer.nextRow()) {
+                    if (isCancelled()) {
+                        return table;
+                    }
+                    if (tokenizer.rowTerminated()) {
+                        complete = tokenizer.bytesConsumed();
+                    } else if (watching) {
+                        // Still being written; the watcher adds it once complete
+                        break;
+                    }
+                    rows++;
+                    table.append(tokenizer);
+                    
+                    // Check the clock only every so often to keep the loop cheap
+                    if ((rows & 0x3FFF) == 0) {
+                        long now = System.nanoTime();
+                        if (now - lastPublish >= PUBLISH_INTERVAL_NANOS) {
+                            lastPublish = now;
+                            rowsRead = rows;
+                            publish(new IngestProgress(tokenizer.bytesConsumed(), totalBytes, rows,
+                                    rows * 1e9 / (now - startTime)));
                         }
-                        step++;
                     }
-                    repaint();
                 }
-            });
+            } finally {
+                tokenizer.close();
+            }
             
-            animationTimer.start();
+            rowsRead = rows;
+            bytesIngested = watching ? complete : tokenizer.bytesConsumed();
+            endsOnCompleteRow = bytesIngested == complete;
+            readNanos = tokenizer.readNanos();
+            return table;
         }
         
-@Override
-protected void paintComponent(Graphics g) {
-    super.paintComponent(g);
-    Graphics2D g2d = (Graphics2D) g;
-    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    
-    if (data.isEmpty() || maxValue == 0) {
-        // Draw empty chart
-        drawEmptyChart(g2d);
-        return;
-    }
-    
-    int width = getWidth() - (LEFT_PADDING + PADDING);
-    int height = getHeight() - (PADDING + BOTTOM_PADDING);
-    
-    // Draw axes
-    g2d.setColor(textColor);
-    g2d.drawLine(LEFT_PADDING, PADDING, LEFT_PADDING, height + PADDING);
-    g2d.drawLine(LEFT_PADDING, height + PADDING, width + LEFT_PADDING, height + PADDING);
-    
-// Draw Y-axis labels
-g2d.setFont(new Font("Arial", Font.PLAIN, 12));
-int yLabelCount = 5;
-for (int i = 0; i <= yLabelCount; i++) {
-    int value = maxValue * i / yLabelCount;
-    int y = height + PADDING - (height * i / yLabelCount);
-    
-    // Adjust the X-coordinate to move the numbers to the right
-    g2d.drawString(String.valueOf(value), 30, y + 5); // Changed from 5 to 30
-    g2d.drawLine(LEFT_PADDING - 5, y, LEFT_PADDING, y);
-}
-    
-    // Draw title
-    g2d.setFont(new Font("Arial", Font.BOLD, 16));
-    String title = "Distribution of Games by Release Year";
-    FontMetrics fm = g2d.getFontMetrics();
-    int titleWidth = fm.stringWidth(title);
-    g2d.drawString(title, (getWidth() - titleWidth) / 2, 20);
-    
-    // Draw X and Y axis labels
-    g2d.setFont(new Font("Arial", Font.PLAIN, 14));
-    g2d.drawString("Release Year", width / 2, height + PADDING + 40);
-    
-    // Draw Y-axis label vertically
-    g2d.rotate(-Math.PI / 2, 15, height / 2);
-    g2d.drawString("Number of Games", 15, height / 2);
-    g2d.rotate(Math.PI / 2, 15, height / 2);
-    
-    // Calculate bar width based on data size
-    int dataSize = data.size();
-    int barWidth = Math.max(10, (width / dataSize) - 10);
-    int barSpacing = (width - (barWidth * dataSize)) / (dataSize + 1);
-    
-    // Draw bars
-    int i = 0;
-    List<String> years = new ArrayList<>(data.keySet());
-    for (String key : years) {
-        double currentHeight = currentHeights.get(key);
-        
-        int x = LEFT_PADDING + barSpacing + i * (barWidth + barSpacing);
-        int barHeight = (int) (height * currentHeight / maxValue);
-        int y = height + PADDING - barHeight;
-        
-        // Draw bar
-        g2d.setColor(barColor);
-        g2d.fillRect(x, y, barWidth, barHeight);
-        g2d.setColor(textColor);
-        g2d.drawRect(x, y, barWidth, barHeight);
-        
-        // Draw value above bar
-        String valueLabel = String.valueOf(Math.round(currentHeight));
-        int labelWidth = g2d.getFontMetrics().stringWidth(valueLabel);
-        g2d.drawString(valueLabel, x + (barWidth - labelWidth) / 2, y - 5);
-        
-        // Draw X-axis labels (slanted)
-        g2d.setFont(new Font("Arial", Font.PLAIN, 12));
-        g2d.rotate(-Math.toRadians(45), x + (barWidth / 2), height + PADDING + 20); // Rotate for slant
-        g2d.drawString(key, x + (barWidth - g2d.getFontMetrics().stringWidth(key)) / 2, height + PADDING + 20);
-        g2d.rotate(Math.toRadians(45), x + (barWidth / 2), height + PADDING + 20); // Rotate back
-        
-        i++;
-    }
-}
+        // Several files: each one is parsed into its own partial aggregate, at
+        // most one per core at a time, and the partials are merged at the end
+        private EarningsAggregate multiFileIngest() throws IOException {
+            int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+            MultiFileIngest ingest = new MultiFileIngest(files, CSV_CHARSET, snapshotCache,
+                    MIN_YEAR, MAX_YEAR, previousParts);
+            long startTime = System.nanoTime();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                ingest.start(pool);
+                while (true) {
+                    List<MultiFileIngest.Part> done;
+                    try {
+                        done = ingest.await(PUBLISH_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        // cancel(true) interrupts this thread
+                        ingest.cancel();
+                        return null;
+                    }
+                    if (done != null) {
+                        rowsRead = ingest.getRowsDone();
+                        bytesIngested = ingest.getTotalBytes();
+                        filesReused = ingest.getFilesReused();
+                        fromCache = filesReused == files.size();
+                        parts = done;
+                        indexes = MultiFileIngest.indexes(done);
+                        if (!filter.isDefault()) {
+                            // The partials only hold the default view
+                            return filter.aggregate(indexes);
+                        }
+                        return MultiFileIngest.mergeAggregates(done, MIN_YEAR, MAX_YEAR, CSV_CHARSET);
+                    }
+                    if (isCancelled()) {
+                        ingest.cancel();
+                        return null;
+                    }
+                    long rows = ingest.getRowsDone();
+                    rowsRead = rows;
+                    publish(new IngestProgress(ingest.getBytesDone(), ingest.getTotalBytes(), rows,
+                            rows * 1e9 / (System.nanoTime() - startTime)));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
         
-        private void drawEmptyChart(Graphics2D g2d) {
-            g2d.setColor(textColor);
-            g2d.setFont(new Font("Arial", Font.BOLD, 16));
-            String message = "No data available";
-            FontMetrics fm = g2d.getFontMetrics();
-            int messageWidth = fm.stringWidth(message);
-            g2d.drawString(message, (getWidth() - messageWidth) / 2, getHeight() / 2);
+        // Memory-mapped, multi-core path for large files
+        private EarningsTable parallelIngest(int cores) throws Exception {
+            long totalBytes = file.length();
+            long startTime = System.nanoTime();
+            ParallelCsvIngest ingest = new ParallelCsvIngest(file, CSV_CHARSET, cores);
+            ForkJoinPool pool = new ForkJoinPool(cores);
+            try {
+                Future<EarningsTable> result = ingest.start(pool);
+                while (true) {
+                    try {
+                        EarningsTable table = result.get(PUBLISH_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                        rowsRead = ingest.getRowsDone();
+                        bytesIngested = ingest.getSourceSize();
+                        readNanos = ingest.getReadNanos();
+                        return table;
+                    } catch (TimeoutException e) {
+                        // Still running, report progress below
+                    } catch (InterruptedException e) {
+                        // cancel(true) interrupts this thread
+                        ingest.cancel();
+                        return new EarningsTable(CSV_CHARSET);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof Exception) {
+                            throw (Exception) e.getCause();
+                        }
+                        throw e;
+                    }
+                    if (isCancelled()) {
+                        ingest.cancel();
+                        return new EarningsTable(CSV_CHARSET);
+                    }
+                    long rows = ingest.getRowsDone();
+                    rowsRead = rows;
+                    publish(new IngestProgress(ingest.getBytesDone(), totalBytes, rows,
+                            rows * 1e9 / (System.nanoTime() - startTime)));
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        
+        @Override
+        protected void process(List<IngestProgress> chunks) {
+            if (isCancelled()) {
+                return;
+            }
+            
+            // Only the most recent snapshot matters
+            IngestProgress p = chunks.get(chunks.size() - 1);
+            int scaled = p.totalBytes > 0
+                    ? (int) Math.min(progressBar.getMaximum(), p.bytesRead * progressBar.getMaximum() / p.totalBytes)
+                    : 0;
+            progressBar.setValue(scaled);
+            progressBar.setString(String.format("%.1f / %.1f MB - %,d rows (%,.0f rows/s)",
+                    p.bytesRead / 1048576.0, p.totalBytes / 1048576.0, p.rowsRead, p.rowsPerSecond));
+        }
+        
+        @Override
+        protected void done() {
+            ingestFinished(this);
         }
     }
     
@@ -511,6 +1161,9 @@ for (int i = 0; i <= yLabelCount; i++) {
             e.printStackTrace();
         }
         
+        // Register the metrics MBean here rather than during the first paint
+        EarningsMetrics.get();
+        
         // Launch application
         SwingUtilities.invokeLater(new Runnable() {
             @Override
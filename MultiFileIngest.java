@@ -0,0 +1,255 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ingest of several exports at once, e.g. a directory of monthly files.
+// Every file is parsed on a bounded pool into its own table and partial
+// aggregate, and the partials are merged afterwards in file order. Merging
+// is associative, so the order only decides which text groups come first.
+//
+// A parsed file is kept as a Part with its own index, so filters can be
+// applied per part and the results merged without copying the tables into
+// one. Parts of an earlier run whose file has not changed are reused as they
+// are, and other unchanged files come back from the SnapshotCache, so adding
+// one export to a set only costs parsing that export.
+public class MultiFileIngest {
+
+    // One parsed file, its index and its partial aggregate
+    public static final class Part {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final EarningsTable table;
+        private final EarningsIndex index;
+        private final EarningsAggregate aggregate;
+
+        Part(File file, long length, long lastModified, EarningsTable table, EarningsAggregate aggregate) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.table = table;
+            this.index = new EarningsIndex(table);
+            this.aggregate = aggregate;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public EarningsTable getTable() {
+            return table;
+        }
+
+        public EarningsIndex getIndex() {
+            return index;
+        }
+
+        public EarningsAggregate getAggregate() {
+            return aggregate;
+        }
+
+        // True while the file still has the size and time it was parsed with
+        boolean isCurrent() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    private final List<File> files;
+    private final Charset charset;
+    private final SnapshotCache cache;
+    private final int minYear;
+    private final int maxYear;
+    private final Map<File, Part> previous;
+
+    private final List<Future<Part>> futures = new ArrayList<>();
+    private final long totalBytes;
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final LongAdder rowsDone = new LongAdder();
+    private final AtomicInteger filesReused = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    // previous holds the parts of an earlier run, keyed by file; may be empty
+    public MultiFileIngest(List<File> files, Charset charset, SnapshotCache cache,
+            int minYear, int maxYear, Map<File, Part> previous) {
+        this.files = new ArrayList<>(files);
+        this.charset = charset;
+        this.cache = cache;
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.previous = previous;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        this.totalBytes = total;
+    }
+
+    // Submits one task per file; the pool's size bounds how many run at once
+    public void start(ExecutorService pool) {
+        for (final File file : files) {
+            futures.add(pool.submit(new Callable<Part>() {
+                @Override
+                public Part call() throws IOException {
+                    return ingest(file);
+                }
+            }));
+        }
+    }
+
+    // Waits up to the timeout for every file. Returns the parts in file
+    // order, or null if some are still running.
+    public List<Part> await(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Part> parts = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                parts.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                return null;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new IOException(files.get(i).getName() + ": " + cause.getMessage(), cause);
+            }
+        }
+        return parts;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Future<Part> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    public long getRowsDone() {
+        return rowsDone.sum();
+    }
+
+    // Files taken from the previous run or the snapshot cache instead of being parsed
+    public int getFilesReused() {
+        return filesReused.get();
+    }
+
+    // Folds the partial aggregates into one
+    public static EarningsAggregate mergeAggregates(List<Part> parts, int minYear, int maxYear, Charset charset) {
+        EarningsAggregate total = new EarningsAggregate(minYear, maxYear, charset);
+        for (Part part : parts) {
+            total.merge(part.aggregate);
+        }
+        return total;
+    }
+
+    // The parts' indexes in file order, e.g. for EarningsFilter.aggregate(List)
+    public static List<EarningsIndex> indexes(List<Part> parts) {
+        List<EarningsIndex> indexes = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            indexes.add(part.index);
+        }
+        return indexes;
+    }
+
+    // Appends the tables in file order into one, for callers that drop the
+    // parts afterwards; holding both would keep every row twice
+    public static EarningsTable mergeTables(List<Part> parts, Charset charset) {
+        EarningsTable total = new EarningsTable(charset);
+        for (Part part : parts) {
+            total.appendAll(part.table);
+        }
+        return total;
+    }
+
+    private Part ingest(File file) throws IOException {
+        EarningsMetrics metrics = EarningsMetrics.get();
+        Part part = previous.get(file);
+        if (part != null && part.isCurrent()) {
+            filesReused.incrementAndGet();
+            bytesDone.addAndGet(part.length);
+            rowsDone.add(part.table.getRowCount());
+            return part;
+        }
+
+        // Size and time are taken first, so a file that grows meanwhile is
+        // parsed again next time
+        long length = file.length();
+        long lastModified = file.lastModified();
+        long start = System.nanoTime();
+        EarningsTable table = cache.load(file, charset);
+        if (table != null) {
+            filesReused.incrementAndGet();
+            bytesDone.addAndGet(length);
+            rowsDone.add(table.getRowCount());
+            metrics.recordIngest(file.getName(), length, table.getRowCount(), table.getMalformedRows(),
+                    System.nanoTime() - start, 0, true);
+        } else {
+            table = parse(file, length, lastModified, start);
+            if (cancelled) {
+                return null;
+            }
+        }
+
+        long aggregateStart = System.nanoTime();
+        EarningsAggregate aggregate = EarningsAggregate.of(table, minYear, maxYear);
+        metrics.recordAggregate(aggregate.getRowsAccepted(), aggregate.getRowsBadYear(),
+                aggregate.getRowsOutOfRange(), System.nanoTime() - aggregateStart);
+        return new Part(file, length, lastModified, table, aggregate);
+    }
+
+    private EarningsTable parse(File file, long length, long lastModified, long start) throws IOException {
+        EarningsTable table = new EarningsTable(charset);
+        long rows = 0;
+        long reported = 0;
+        CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+        try {
+            // Skip header line
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                rows++;
+                table.append(tokenizer);
+                if ((rows & 0x3FFF) == 0) {
+                    if (cancelled) {
+                        return table;
+                    }
+                    rowsDone.add(0x4000);
+                    long consumed = tokenizer.bytesConsumed();
+                    bytesDone.addAndGet(consumed - reported);
+                    reported = consumed;
+                }
+            }
+        } finally {
+            tokenizer.close();
+        }
+        rowsDone.add(rows & 0x3FFF);
+        bytesDone.addAndGet(length - reported);
+
+        long elapsed = System.nanoTime() - start;
+        long readNanos = tokenizer.readNanos();
+        EarningsMetrics.get().recordIngest(file.getName(), tokenizer.bytesConsumed(), rows,
+                table.getMalformedRows(), readNanos, elapsed - readNanos, false);
+
+        // Only a parse of the file as it still is may be cached; the snapshot
+        // records the current size and time, so a file that grew or changed
+        // meanwhile would otherwise load as a hit without its new rows
+        if (tokenizer.bytesConsumed() == length && file.length() == length
+                && file.lastModified() == lastModified) {
+            try {
+                cache.store(file, table);
+            } catch (IOException e) {
+                // The cache is only an accelerator; carry on without it
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,66 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Number formatting shared by the exporters, the web server and the chart
+// labels. formatLong and formatCents write into a caller's char buffer so
+// hot loops do not allocate.
+final class NumberText {
+
+    private NumberText() {
+    }
+
+    // Writes value right-aligned into buf[.., end) and returns the number of chars used
+    static int formatLong(long value, char[] buf, int end) {
+        int pos = end;
+        boolean negative = value < 0;
+        if (value == 0) {
+            buf[--pos] = '0';
+        }
+        while (value != 0) {
+            buf[--pos] = (char) ('0' + Math.abs(value % 10));
+            value /= 10;
+        }
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        return end - pos;
+    }
+
+    // Writes value right-aligned into buf[.., end) for the text exports and
+    // returns the number of chars used: whole numbers as integers, others
+    // rounded to cents, so summation noise such as 7417644.350000001 does not
+    // reach the reader. buf needs room for 24 chars.
+    static int formatCents(double value, char[] buf, int end) {
+        if (!(Math.abs(value) < 9e18)) {
+            // Infinities and values too large for a long
+            return copy(Double.toString(value), buf, end);
+        }
+        if (value == Math.rint(value)) {
+            return formatLong((long) value, buf, end);
+        }
+        if (Math.abs(value) >= 1e13) {
+            // value * 100 would no longer be exact
+            return copy(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString(), buf, end);
+        }
+        long cents = Math.round(Math.abs(value) * 100);
+        buf[end - 1] = (char) ('0' + cents % 10);
+        buf[end - 2] = (char) ('0' + cents / 10 % 10);
+        buf[end - 3] = '.';
+        int length = 3 + formatLong(cents / 100, buf, end - 3);
+        if (value < 0 && cents != 0) {
+            buf[end - ++length] = '-';
+        }
+        return length;
+    }
+
+    private static int copy(String text, char[] buf, int end) {
+        text.getChars(0, text.length(), buf, end - text.length());
+        return text.length();
+    }
+
+    static String formatCents(double value) {
+        char[] buf = new char[24];
+        int length = formatCents(value, buf, buf.length);
+        return new String(buf, buf.length - length, length);
+    }
+}
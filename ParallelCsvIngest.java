@@ -0,0 +1,280 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Parallel ingest for large CSV files. The file is memory-mapped, cut into
+// chunks that start right after a newline, and every chunk is tokenized on a
+// fork-join pool into its own partial EarningsTable. The partials are
+// appended in file order once all chunks are done. Other per-chunk results,
+// such as EarningsSketch, can be built the same way through a Partial.
+//
+// Chunk boundaries are found by looking for the next line break, which is
+// only a row end when it is not inside a quoted field. Every chunk starts on
+// a real row as long as the chunks before it saw no line break inside quotes,
+// so a chunk that does see one stops the run and the whole file is parsed
+// again serially. Files with multiline fields cost an extra pass but are
+// never split inside a row.
+public class ParallelCsvIngest {
+
+    private static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final File file;
+    private final Charset charset;
+    private final int parallelism;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final LongAdder rowsDone = new LongAdder();
+    private final LongAdder chunkReadNanos = new LongAdder();
+    private final LongAdder chunkBusyNanos = new LongAdder();
+    private volatile boolean cancelled;
+    private volatile boolean multilineFound;
+    private volatile long sourceSize;
+    private volatile long runNanos;
+
+    // How the result of one chunk is built and how chunk results combine
+    public interface Partial<T> {
+        T create();
+
+        void add(T partial, CsvTokenizer row);
+
+        // Folds the result of the following chunk into into
+        void merge(T into, T next);
+    }
+
+    public ParallelCsvIngest(File file, Charset charset, int parallelism) {
+        this.file = file;
+        this.charset = charset;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Starts parsing on the given pool. The returned future yields the whole table.
+    public Future<EarningsTable> start(ForkJoinPool pool) {
+        return start(pool, new Partial<EarningsTable>() {
+            @Override
+            public EarningsTable create() {
+                return new EarningsTable(charset);
+            }
+
+            @Override
+            public void add(EarningsTable partial, CsvTokenizer row) {
+                partial.append(row);
+            }
+
+            @Override
+            public void merge(EarningsTable into, EarningsTable next) {
+                into.appendAll(next);
+            }
+        });
+    }
+
+    public <T> Future<T> start(ForkJoinPool pool, final Partial<T> partial) {
+        return pool.submit(new Callable<T>() {
+            @Override
+            public T call() throws IOException {
+                return run(partial);
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    public long getRowsDone() {
+        return rowsDone.sum();
+    }
+
+    // Length of the file when parsing started; bytes appended later are not read
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    // The part of the finished run spent reading the mapped file, taken as
+    // the chunks' share of read time out of their busy time
+    public long getReadNanos() {
+        long busy = chunkBusyNanos.sum();
+        return busy > 0 ? (long) (runNanos * ((double) chunkReadNanos.sum() / busy)) : 0;
+    }
+
+    // True when the file had multiline quoted fields and was parsed serially
+    public boolean wasSerial() {
+        return multilineFound;
+    }
+
+    private <T> T run(Partial<T> partial) throws IOException {
+        long start = System.nanoTime();
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            List<ChunkTask<T>> tasks = new ArrayList<>();
+            long[] bounds = splitChunks(channel);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                tasks.add(new ChunkTask<>(channel, bounds[i], bounds[i + 1], i == 0, partial));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            if (multilineFound) {
+                return runSerial(partial);
+            }
+
+            // Merge the per-chunk partials
+            T merged = tasks.get(0).join();
+            for (int i = 1; i < tasks.size(); i++) {
+                partial.merge(merged, tasks.get(i).join());
+            }
+            return merged;
+        } catch (RuntimeException e) {
+            // Chunks report I/O errors unchecked; surface the original IOException
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+            }
+            throw e;
+        } finally {
+            channel.close();
+            runNanos = System.nanoTime() - start;
+        }
+    }
+
+    // Parses the file in one pass into a single partial, starting the
+    // progress counters over
+    private <T> T runSerial(Partial<T> partial) throws IOException {
+        bytesDone.set(0);
+        rowsDone.reset();
+        chunkReadNanos.reset();
+        chunkBusyNanos.reset();
+        T result = partial.create();
+        long start = System.nanoTime();
+        try (InputStream in = new FileInputStream(file)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(in, EarningsAggregate.FIELD_COUNT);
+            tokenizer.nextRow();
+            parseRows(tokenizer, result, partial, false);
+            chunkReadNanos.add(tokenizer.readNanos());
+        }
+        chunkBusyNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    // Feeds the tokenizer's rows into partial, publishing progress every
+    // 16K rows. With stopOnMultiline the loop ends at the first row with a
+    // line break inside quotes.
+    private <T> void parseRows(CsvTokenizer tokenizer, T result, Partial<T> builder, boolean stopOnMultiline)
+            throws IOException {
+        long rows = 0;
+        long reported = tokenizer.bytesConsumed();
+        while (tokenizer.nextRow()) {
+            if (stopOnMultiline && tokenizer.multilineRows() > 0) {
+                multilineFound = true;
+                break;
+            }
+            rows++;
+            builder.add(result, tokenizer);
+
+            if ((rows & 0x3FFF) == 0) {
+                if (cancelled || (stopOnMultiline && multilineFound)) {
+                    break;
+                }
+                long consumed = tokenizer.bytesConsumed();
+                bytesDone.addAndGet(consumed - reported);
+                rowsDone.add(0x4000);
+                reported = consumed;
+            }
+        }
+        bytesDone.addAndGet(tokenizer.bytesConsumed() - reported);
+        rowsDone.add(rows & 0x3FFF);
+    }
+
+    // Returns chunk boundaries; each one after the first sits just past a newline
+    private long[] splitChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        sourceSize = size;
+        long target = size / ((long) parallelism * CHUNKS_PER_THREAD);
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, target));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long start = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (start + chunkSize < size) {
+            long p = start + chunkSize;
+            long boundary = -1;
+            while (boundary < 0 && p < size) {
+                probe.clear();
+                int n = channel.read(probe, p);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = p + i + 1;
+                        break;
+                    }
+                }
+                p += n;
+            }
+            if (boundary < 0 || boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            start = boundary;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Parses one mapped region into its own partial result
+    private class ChunkTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean skipHeader;
+        private final Partial<T> builder;
+
+        ChunkTask(FileChannel channel, long start, long end, boolean skipHeader, Partial<T> builder) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.skipHeader = skipHeader;
+            this.builder = builder;
+        }
+
+        @Override
+        protected T compute() {
+            T partial = builder.create();
+            long busyStart = System.nanoTime();
+            try {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                CsvTokenizer tokenizer = new CsvTokenizer(new ByteBufferInputStream(region),
+                        EarningsAggregate.FIELD_COUNT);
+                if (skipHeader) {
+                    tokenizer.nextRow();
+                }
+                parseRows(tokenizer, partial, builder, true);
+                chunkReadNanos.add(tokenizer.readNanos());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunkBusyNanos.add(System.nanoTime() - busyStart);
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+// On-disk cache of parsed EarningsTables. Each source CSV gets one snapshot
+// file holding its columns as flat little-endian arrays (ints, doubles,
+// dictionary codes) plus the dictionaries, so an unchanged file is loaded
+// with a few bulk copies out of a memory-mapped buffer instead of being
+// parsed again. Snapshots over 2 GB cannot be mapped and count as misses.
+//
+// A snapshot is only used when the source path, size, modification time and
+// content fingerprint all match. The fingerprint hashes a fixed number of
+// blocks spread over the file (the whole file when it is small), so checking
+// it stays cheap on multi-GB inputs.
+public class SnapshotCache {
+
+    private static final int MAGIC = 0x45424743; // "EBGC"
+    // 2: malformed row count stored; rows with bad quoting count as malformed
+    private static final int VERSION = 2;
+    private static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
+    private static final int SAMPLE_BLOCKS = 16;
+
+    private final File directory;
+
+    public SnapshotCache(File directory) {
+        this.directory = directory;
+    }
+
+    // Default location: -Desports.cache.dir or ~/.cache/esports-bargraph
+    public static SnapshotCache defaultCache() {
+        String dir = System.getProperty("esports.cache.dir");
+        if (dir == null) {
+            dir = System.getProperty("user.home") + File.separator + ".cache" + File.separator + "esports-bargraph";
+        }
+        return new SnapshotCache(new File(dir));
+    }
+
+    // Returns the cached table for source, or null if there is no valid snapshot
+    public EarningsTable load(File source, Charset charset) {
+        File snapshot = snapshotFile(source);
+        if (!snapshot.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            if (in.getLong() != source.length() || in.getLong() != source.lastModified()) {
+                return null;
+            }
+            long fingerprint = in.getLong();
+            String path = readString(in);
+            String charsetName = readString(in);
+            if (!path.equals(source.getCanonicalPath()) || !charsetName.equals(charset.name())
+                    || fingerprint != fingerprint(source)) {
+                return null;
+            }
+
+            int rowCount = in.getInt();
+            long malformedRows = in.getLong();
+            int[] years = new int[rowCount];
+            in.asIntBuffer().get(years);
+            in.position(in.position() + rowCount * 4);
+
+            EarningsAggregate.Measure[] measureOrder = EarningsAggregate.Measure.values();
+            double[][] measures = new double[measureOrder.length][];
+            for (int m = 0; m < measures.length; m++) {
+                measures[m] = new double[rowCount];
+                in.asDoubleBuffer().get(measures[m]);
+                in.position(in.position() + rowCount * 8);
+            }
+
+            int textColumns = EarningsTable.TEXT_COLUMNS.length;
+            int[][] codes = new int[textColumns][];
+            FieldDictionary[] dictionaries = new FieldDictionary[textColumns];
+            for (int t = 0; t < textColumns; t++) {
+                codes[t] = new int[rowCount];
+                in.asIntBuffer().get(codes[t]);
+                in.position(in.position() + rowCount * 4);
+
+                dictionaries[t] = new FieldDictionary(charset);
+                int size = in.getInt();
+                for (int code = 0; code < size; code++) {
+                    byte[] raw = new byte[in.getInt()];
+                    in.get(raw);
+                    dictionaries[t].codeOf(raw, 0, raw.length);
+                }
+            }
+            return new EarningsTable(charset, rowCount, malformedRows, years, measures, codes, dictionaries);
+        } catch (IOException | RuntimeException e) {
+            // A damaged or foreign snapshot is treated as a miss
+            return null;
+        }
+    }
+
+    // Writes a snapshot of table for source. The snapshot is written to a
+    // temporary file first, so a failure never leaves a partial snapshot.
+    public void store(File source, EarningsTable table) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        File snapshot = snapshotFile(source);
+        File temp = new File(directory, snapshot.getName() + ".tmp");
+        try {
+            write(source, table, temp);
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    private void write(File source, EarningsTable table, File temp) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(MAGIC).putInt(VERSION);
+            out.putLong(source.length()).putLong(source.lastModified()).putLong(fingerprint(source));
+            writeString(out, source.getCanonicalPath());
+            writeString(out, table.getCharset().name());
+
+            int rowCount = table.getRowCount();
+            out.putInt(rowCount);
+            out.putLong(table.getMalformedRows());
+            out = writeInts(channel, out, table.releaseYears(), rowCount);
+            for (EarningsAggregate.Measure measure : EarningsAggregate.Measure.values()) {
+                out = writeDoubles(channel, out, table.measure(measure), rowCount);
+            }
+            for (int t = 0; t < EarningsTable.TEXT_COLUMNS.length; t++) {
+                out = writeInts(channel, out, table.codes(t), rowCount);
+                FieldDictionary dictionary = table.dictionary(t);
+                out = ChannelBuffers.ensureRoom(channel, out, 4);
+                out.putInt(dictionary.size());
+                for (int code = 0; code < dictionary.size(); code++) {
+                    byte[] raw = dictionary.rawBytes(code);
+                    out = ChannelBuffers.ensureRoom(channel, out, 4 + raw.length);
+                    out.putInt(raw.length);
+                    out.put(raw);
+                }
+            }
+            ChannelBuffers.flush(channel, out);
+        }
+    }
+
+    // Copies a column through the buffer in bulk, flushing whenever it fills up
+    private static ByteBuffer writeInts(FileChannel channel, ByteBuffer out, int[] values, int count) throws IOException {
+        int i = 0;
+        while (i < count) {
+            out = ChannelBuffers.ensureRoom(channel, out, 4);
+            int n = Math.min(count - i, out.remaining() / 4);
+            out.asIntBuffer().put(values, i, n);
+            out.position(out.position() + n * 4);
+            i += n;
+        }
+        return out;
+    }
+
+    private static ByteBuffer writeDoubles(FileChannel channel, ByteBuffer out, double[] values, int count) throws IOException {
+        int i = 0;
+        while (i < count) {
+            out = ChannelBuffers.ensureRoom(channel, out, 8);
+            int n = Math.min(count - i, out.remaining() / 8);
+            out.asDoubleBuffer().put(values, i, n);
+            out.position(out.position() + n * 8);
+            i += n;
+        }
+        return out;
+    }
+
+    private File snapshotFile(File source) {
+        String key;
+        try {
+            key = source.getCanonicalPath();
+        } catch (IOException e) {
+            key = source.getAbsolutePath();
+        }
+        return new File(directory, sha1Hex(key) + ".ebgc");
+    }
+
+    // CRC32 over sampled blocks of the file plus its length
+    static long fingerprint(File source) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(SAMPLE_BLOCK_SIZE);
+            long stride = Math.max(SAMPLE_BLOCK_SIZE, (size - SAMPLE_BLOCK_SIZE) / Math.max(1, SAMPLE_BLOCKS - 1));
+            for (long offset = 0; offset < size; offset += stride) {
+                readBlock(channel, block, offset, crc);
+            }
+            // Always include the tail, where appended rows land
+            if (size > SAMPLE_BLOCK_SIZE) {
+                readBlock(channel, block, size - SAMPLE_BLOCK_SIZE, crc);
+            }
+            return (size << 32) ^ crc.getValue();
+        }
+    }
+
+    private static void readBlock(FileChannel channel, ByteBuffer block, long offset, CRC32 crc) throws IOException {
+        block.clear();
+        while (block.hasRemaining()) {
+            int n = channel.read(block, offset + block.position());
+            if (n <= 0) {
+                break;
+            }
+        }
+        block.flip();
+        crc.update(block);
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String sha1Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.nio.charset.Charset;
+import java.util.*;
+
+// Weighted Space-Saving summary of the heaviest keys, e.g. countries by
+// summed Top_Country_Earnings. It keeps a fixed number of counters; a new
+// key that arrives while all are taken replaces the smallest one and
+// inherits its count as possible overestimate. Any key whose true total
+// exceeds total weight / capacity is guaranteed to be in the summary.
+//
+// Keys are looked up by their raw bytes, like FieldDictionary, so counting
+// a key that is already tracked allocates nothing. A min-heap over the
+// counters finds the one to replace in O(log capacity).
+public class SpaceSaving {
+
+    // One reported key. The true total lies in [count - error, count].
+    public static final class Entry {
+        private final String key;
+        private final double count;
+        private final double error;
+
+        Entry(String key, double count, double error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getCount() {
+            return count;
+        }
+
+        public double getError() {
+            return error;
+        }
+    }
+
+    private final int capacity;
+    private final Charset charset;
+    private final byte[][] keys;
+    private final long[] hashes;
+    private final double[] counts;
+    private final double[] errors;
+    private int size;
+
+    // Min-heap of counter indices by count, and each counter's heap position
+    private final int[] heap;
+    private final int[] heapPos;
+
+    // Open-addressing table of counter index + 1 (0 marks an empty slot)
+    private final int[] slots;
+    private final int mask;
+
+    public SpaceSaving(int capacity, Charset charset) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.charset = charset;
+        keys = new byte[capacity][];
+        hashes = new long[capacity];
+        counts = new double[capacity];
+        errors = new double[capacity];
+        heap = new int[capacity];
+        heapPos = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        mask = slots.length - 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Adds weight to the key buf[start, end). NaN and non-positive weights are ignored.
+    public void add(byte[] buf, int start, int end, double weight) {
+        if (!(weight > 0)) {
+            return;
+        }
+        add(buf, start, end, HyperLogLog.hash64(buf, start, end), weight, 0);
+    }
+
+    // Folds another summary into this one (mergeable Space-Saving). A key
+    // that one side does not track may still have had up to that side's
+    // smallest count there, or nothing if that side never filled up, so that
+    // amount is added to both its count and its error. The heaviest keys are
+    // kept, so [count - error, count] still bounds every reported total.
+    public void merge(SpaceSaving other) {
+        double mine = minCount();
+        double theirs = other.minCount();
+        int n = size + other.size;
+        byte[][] mergedKeys = new byte[n][];
+        long[] mergedHashes = new long[n];
+        final double[] mergedCounts = new double[n];
+        double[] mergedErrors = new double[n];
+        boolean[] matched = new boolean[other.size];
+        int m = 0;
+        for (int c = 0; c < size; c++) {
+            byte[] key = keys[c];
+            int o = other.find(key, 0, key.length, hashes[c]);
+            mergedKeys[m] = key;
+            mergedHashes[m] = hashes[c];
+            if (o >= 0) {
+                matched[o] = true;
+                mergedCounts[m] = counts[c] + other.counts[o];
+                mergedErrors[m] = errors[c] + other.errors[o];
+            } else {
+                mergedCounts[m] = counts[c] + theirs;
+                mergedErrors[m] = errors[c] + theirs;
+            }
+            m++;
+        }
+        for (int o = 0; o < other.size; o++) {
+            if (!matched[o]) {
+                mergedKeys[m] = other.keys[o];
+                mergedHashes[m] = other.hashes[o];
+                mergedCounts[m] = other.counts[o] + mine;
+                mergedErrors[m] = other.errors[o] + mine;
+                m++;
+            }
+        }
+
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(mergedCounts[b], mergedCounts[a]);
+            }
+        });
+        Arrays.fill(slots, 0);
+        size = 0;
+        for (int i = 0; i < Math.min(capacity, m); i++) {
+            int j = order[i];
+            int c = size++;
+            heap[c] = c;
+            heapPos[c] = c;
+            counts[c] = mergedCounts[j];
+            errors[c] = mergedErrors[j];
+            setKey(c, mergedKeys[j], 0, mergedKeys[j].length, mergedHashes[j]);
+            siftUp(c);
+        }
+    }
+
+    // Largest count an untracked key can have had: the smallest counter
+    // once all are taken, 0 before
+    private double minCount() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    // The k heaviest keys, largest first
+    public List<Entry> top(int k) {
+        Integer[] order = new Integer[size];
+        for (int c = 0; c < size; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(counts[b], counts[a]);
+            }
+        });
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, size); i++) {
+            int c = order[i];
+            byte[] key = keys[c];
+            result.add(new Entry(FieldDictionary.decode(key, 0, key.length, charset), counts[c], errors[c]));
+        }
+        return result;
+    }
+
+    private void add(byte[] buf, int start, int end, long hash, double weight, double error) {
+        int c = find(buf, start, end, hash);
+        if (c >= 0) {
+            counts[c] += weight;
+            errors[c] += error;
+            siftDown(heapPos[c]);
+            return;
+        }
+        if (size < capacity) {
+            c = size++;
+            heap[c] = c;
+            heapPos[c] = c;
+            counts[c] = weight;
+            errors[c] = error;
+            setKey(c, buf, start, end, hash);
+            siftUp(c);
+            return;
+        }
+
+        // Take over the smallest counter
+        c = heap[0];
+        remove(c);
+        errors[c] = counts[c] + error;
+        counts[c] += weight;
+        setKey(c, buf, start, end, hash);
+        siftDown(0);
+    }
+
+    private void setKey(int c, byte[] buf, int start, int end, long hash) {
+        keys[c] = Arrays.copyOfRange(buf, start, end);
+        hashes[c] = hash;
+        int slot = (int) hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = c + 1;
+    }
+
+    private int find(byte[] buf, int start, int end, long hash) {
+        for (int slot = (int) hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int c = slots[slot] - 1;
+            if (hashes[c] == hash && Arrays.equals(keys[c], 0, keys[c].length, buf, start, end)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    // Deletes counter c from the table, shifting later entries of the
+    // probe run back so lookups never stop early at the hole
+    private void remove(int c) {
+        int hole = (int) hashes[c] & mask;
+        while (slots[hole] != c + 1) {
+            hole = (hole + 1) & mask;
+        }
+        slots[hole] = 0;
+        for (int slot = (hole + 1) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int home = (int) hashes[slots[slot] - 1] & mask;
+            // Move the entry unless its home lies cyclically in (hole, slot]
+            boolean stays = hole <= slot ? home > hole && home <= slot : home > hole || home <= slot;
+            if (!stays) {
+                slots[hole] = slots[slot];
+                slots[slot] = 0;
+                hole = slot;
+            }
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (counts[heap[parent]] <= counts[heap[i]]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int child = left + 1 < size && counts[heap[left + 1]] < counts[heap[left]] ? left + 1 : left;
+            if (counts[heap[i]] <= counts[heap[child]]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int a = heap[i];
+        int b = heap[j];
+        heap[i] = b;
+        heap[j] = a;
+        heapPos[b] = i;
+        heapPos[a] = j;
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+// Merging t-digest for quantiles such as the median prize money of a genre.
+// Values are buffered and periodically merged into a sorted list of
+// centroids (mean, weight). The k1 scale function limits how much weight a
+// centroid may hold: little near the tails, more around the median. That
+// keeps extreme quantiles accurate and caps the digest at about
+// compression / 2 centroids, whatever the number of values. Digests merge
+// by combining their centroid lists the same way.
+public class TDigest {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+
+    private final double[] buffer;
+    private int buffered;
+
+    // Scratch space for a merge pass
+    private double[] mergeMeans;
+    private double[] mergeWeights;
+
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("compression must be at least 10: " + compression);
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 8;
+        means = new double[capacity];
+        weights = new double[capacity];
+        buffer = new double[capacity * 5];
+        mergeMeans = new double[capacity + buffer.length];
+        mergeWeights = new double[mergeMeans.length];
+    }
+
+    // NaN values (unparseable cells) are ignored
+    public void add(double value) {
+        if (value != value) {
+            return;
+        }
+        buffer[buffered++] = value;
+        if (buffered == buffer.length) {
+            compress();
+        }
+    }
+
+    public void merge(TDigest other) {
+        other.compress();
+        compress();
+        if (other.centroids == 0) {
+            return;
+        }
+        ensureMergeCapacity(centroids + other.centroids);
+        int n = mergeSorted(means, weights, centroids, other.means, other.weights, other.centroids);
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        collapse(n);
+    }
+
+    public double getCount() {
+        compress();
+        return totalWeight;
+    }
+
+    // Estimated value at quantile q in [0, 1], NaN when empty
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("q must be in [0, 1]: " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i + 1 < centroids; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (index < cumulative + step) {
+                return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / step;
+            }
+            cumulative += step;
+        }
+        double last = weights[centroids - 1] / 2;
+        double fraction = last > 0 ? Math.min(1, (index - cumulative) / last) : 1;
+        return means[centroids - 1] + (max - means[centroids - 1]) * fraction;
+    }
+
+    // Folds the buffered values into the centroids
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        for (int i = 0; i < buffered; i++) {
+            min = Math.min(min, buffer[i]);
+            max = Math.max(max, buffer[i]);
+        }
+        totalWeight += buffered;
+        ensureMergeCapacity(centroids + buffered);
+
+        // Merge the sorted buffer (weight 1 each) with the centroids
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < centroids || j < buffered) {
+            if (j >= buffered || (i < centroids && means[i] <= buffer[j])) {
+                mergeMeans[n] = means[i];
+                mergeWeights[n++] = weights[i++];
+            } else {
+                mergeMeans[n] = buffer[j++];
+                mergeWeights[n++] = 1;
+            }
+        }
+        buffered = 0;
+        collapse(n);
+    }
+
+    private int mergeSorted(double[] m1, double[] w1, int n1, double[] m2, double[] w2, int n2) {
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < n1 || j < n2) {
+            if (j >= n2 || (i < n1 && m1[i] <= m2[j])) {
+                mergeMeans[n] = m1[i];
+                mergeWeights[n++] = w1[i++];
+            } else {
+                mergeMeans[n] = m2[j];
+                mergeWeights[n++] = w2[j++];
+            }
+        }
+        return n;
+    }
+
+    // Combines neighbours of the sorted merge list as far as the k1 scale
+    // function allows and makes the result the new centroid list
+    private void collapse(int n) {
+        int out = 0;
+        double cumulative = 0;
+        double limit = quantileLimit(0);
+        double mean = mergeMeans[0];
+        double weight = mergeWeights[0];
+        for (int i = 1; i < n; i++) {
+            double w = mergeWeights[i];
+            if ((cumulative + weight + w) / totalWeight <= limit) {
+                weight += w;
+                mean += (mergeMeans[i] - mean) * w / weight;
+            } else {
+                out = emit(out, mean, weight);
+                cumulative += weight;
+                limit = quantileLimit(cumulative / totalWeight);
+                mean = mergeMeans[i];
+                weight = w;
+            }
+        }
+        centroids = emit(out, mean, weight);
+    }
+
+    private int emit(int out, double mean, double weight) {
+        if (out == means.length) {
+            means = Arrays.copyOf(means, out * 2);
+            weights = Arrays.copyOf(weights, out * 2);
+        }
+        means[out] = mean;
+        weights[out] = weight;
+        return out + 1;
+    }
+
+    // Largest quantile a centroid starting at q may reach: one step of
+    // k(q) = compression / (2 pi) * asin(2q - 1)
+    private double quantileLimit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * Math.min(q, 1) - 1);
+        double next = Math.min(k + 1, compression / 4);
+        return (1 + Math.sin(next * 2 * Math.PI / compression)) / 2;
+    }
+
+    private void ensureMergeCapacity(int n) {
+        if (mergeMeans.length < n) {
+            mergeMeans = new double[n];
+            mergeWeights = new double[n];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.*;
+
+// Count of rows per release year. Years inside [minYear, maxYear] live in a
+// plain long[] so counting never boxes or allocates; anything outside that
+// range falls back to a sorted overflow map. Iteration is always in
+// ascending year order.
+public class YearHistogram {
+
+    // Receives the non-empty years in ascending order; E lets a visitor
+    // throw a checked exception (e.g. IOException while exporting)
+    public interface Visitor<E extends Exception> {
+        void visit(int year, long count) throws E;
+    }
+
+    private final int minYear;
+    private final int maxYear;
+    private final long[] counts;
+    private TreeMap<Integer, Long> overflow;
+
+    public YearHistogram(int minYear, int maxYear) {
+        if (maxYear < minYear) {
+            throw new IllegalArgumentException("maxYear < minYear");
+        }
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.counts = new long[maxYear - minYear + 1];
+    }
+
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return maxYear;
+    }
+
+    public void increment(int year) {
+        int index = year - minYear;
+        if (index >= 0 && index < counts.length) {
+            counts[index]++;
+        } else {
+            addOverflow(year, 1);
+        }
+    }
+
+    public void add(int year, long count) {
+        int index = year - minYear;
+        if (index >= 0 && index < counts.length) {
+            counts[index] += count;
+        } else {
+            addOverflow(year, count);
+        }
+    }
+
+    public long get(int year) {
+        int index = year - minYear;
+        if (index >= 0 && index < counts.length) {
+            return counts[index];
+        }
+        if (overflow == null) {
+            return 0;
+        }
+        Long count = overflow.get(year);
+        return count != null ? count : 0;
+    }
+
+    // Adds every count of other into this histogram
+    public void merge(YearHistogram other) {
+        if (other.minYear == minYear && other.maxYear == maxYear) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        } else {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.minYear + i, other.counts[i]);
+                }
+            }
+        }
+        if (other.overflow != null) {
+            for (Map.Entry<Integer, Long> e : other.overflow.entrySet()) {
+                add(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        overflow = null;
+    }
+
+    public boolean isEmpty() {
+        for (long count : counts) {
+            if (count != 0) {
+                return false;
+            }
+        }
+        return overflow == null || overflow.isEmpty();
+    }
+
+    public long maxCount() {
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        if (overflow != null) {
+            for (long count : overflow.values()) {
+                max = Math.max(max, count);
+            }
+        }
+        return max;
+    }
+
+    public long total() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (overflow != null) {
+            for (long count : overflow.values()) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    // Visits all years with a non-zero count in ascending order
+    public <E extends Exception> void forEach(Visitor<E> visitor) throws E {
+        Iterator<Map.Entry<Integer, Long>> extra = overflow != null
+                ? overflow.entrySet().iterator()
+                : Collections.<Map.Entry<Integer, Long>>emptyIterator();
+        Map.Entry<Integer, Long> next = extra.hasNext() ? extra.next() : null;
+
+        // Years below the dense range come first
+        while (next != null && next.getKey() < minYear) {
+            visitor.visit(next.getKey(), next.getValue());
+            next = extra.hasNext() ? extra.next() : null;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                visitor.visit(minYear + i, counts[i]);
+            }
+        }
+        while (next != null) {
+            visitor.visit(next.getKey(), next.getValue());
+            next = extra.hasNext() ? extra.next() : null;
+        }
+    }
+
+    private void addOverflow(int year, long count) {
+        if (overflow == null) {
+            overflow = new TreeMap<>();
+        }
+        Long current = overflow.get(year);
+        overflow.put(year, current != null ? current + count : count);
+    }
+}
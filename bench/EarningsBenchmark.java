@@ -0,0 +1,362 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// Micro-benchmarks for the ingest, aggregation, export and rendering paths.
+// Each case is run for a few warmup rounds and then timed; the result of
+// every run is folded into a sink so the JIT cannot drop the work.
+//
+//   java -Djava.awt.headless=true EarningsBenchmark [options] [case...]
+//
+//   --rows N[,N...]     synthetic sizes to generate, default 1000,100000,1000000
+//   --file <csv>        benchmark an existing file instead of synthetic data
+//   --warmup N          warmup rounds per case, default 3
+//   --iterations N      measured rounds per case, default 5
+//
+// Cases: split-ingest, tokenizer-ingest, table-ingest, hashmap-histogram,
+// year-histogram, aggregate, export, paint (all by default).
+public class EarningsBenchmark {
+
+    private static final Charset CSV_CHARSET = Charset.defaultCharset();
+    private static final int MIN_YEAR = EarningsAggregate.DEFAULT_MIN_YEAR;
+    private static final int MAX_YEAR = EarningsAggregate.DEFAULT_MAX_YEAR;
+    private static final String[] ALL_CASES = {
+        "split-ingest", "tokenizer-ingest", "table-ingest", "hashmap-histogram",
+        "year-histogram", "aggregate", "export", "paint"
+    };
+
+    private interface Case {
+        // Runs the measured work once and returns something derived from it
+        long run() throws Exception;
+    }
+
+    private int warmup = 3;
+    private int iterations = 5;
+    private final List<Long> rowCounts = new ArrayList<>();
+    private File inputFile;
+    private final Set<String> cases = new LinkedHashSet<>();
+    private long sink;
+
+    public static void main(String[] args) throws Exception {
+        EarningsBenchmark benchmark = new EarningsBenchmark();
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(2);
+        }
+        benchmark.run();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                if (!Arrays.asList(ALL_CASES).contains(arg)) {
+                    throw new IllegalArgumentException("unknown case " + arg + ", expected one of " + Arrays.toString(ALL_CASES));
+                }
+                cases.add(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--rows":
+                        for (String n : value.split(",")) {
+                            rowCounts.add(Long.parseLong(n.trim()));
+                        }
+                        break;
+                    case "--file":
+                        inputFile = new File(value);
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(value);
+                        break;
+                    case "--iterations":
+                        iterations = Math.max(1, Integer.parseInt(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad number for " + arg + ": " + value);
+            }
+        }
+        if (cases.isEmpty()) {
+            cases.addAll(Arrays.asList(ALL_CASES));
+        }
+        if (rowCounts.isEmpty()) {
+            rowCounts.addAll(Arrays.asList(1000L, 100000L, 1000000L));
+        }
+    }
+
+    private void run() throws Exception {
+        System.out.printf("%-18s %12s %12s %12s %14s%n", "case", "rows", "best ms", "mean ms", "rows/s");
+        if (inputFile != null) {
+            runAll(inputFile);
+        } else {
+            for (long rows : rowCounts) {
+                File file = File.createTempFile("earnings-" + rows + "-", ".csv");
+                file.deleteOnExit();
+                SyntheticEarningsGenerator.generate(file, rows, 42L);
+                try {
+                    runAll(file);
+                } finally {
+                    file.delete();
+                }
+            }
+        }
+        // Printed so the sink stays observable
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private void runAll(File file) throws Exception {
+        Inputs inputs = new Inputs(file);
+        for (String name : cases) {
+            measure(name, inputs.rows, createCase(name, file, inputs));
+        }
+    }
+
+    // Inputs shared by the cases that do not measure parsing
+    private static final class Inputs {
+        final EarningsTable table;
+        final int rows;
+        final int[] years;
+        final EarningsAggregate aggregate;
+
+        Inputs(File file) throws IOException {
+            table = tableIngest(file);
+            rows = table.getRowCount();
+            years = Arrays.copyOf(table.releaseYears(), rows);
+            aggregate = EarningsAggregate.of(table, MIN_YEAR, MAX_YEAR);
+        }
+    }
+
+    // Entry point for the JMH benchmarks in jmh/. They live in a named
+    // package, as JMH requires, and reach this class by reflection.
+    public static Callable<Long> prepare(String name, File file) throws Exception {
+        if (!Arrays.asList(ALL_CASES).contains(name)) {
+            throw new IllegalArgumentException("unknown case " + name);
+        }
+        final Case benchmarkCase = createCase(name, file, new Inputs(file));
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return benchmarkCase.run();
+            }
+        };
+    }
+
+    private static Case createCase(String name, final File file, Inputs inputs) {
+        final EarningsTable table = inputs.table;
+        final int[] years = inputs.years;
+        final EarningsAggregate aggregate = inputs.aggregate;
+        switch (name) {
+            case "split-ingest":
+                return new Case() {
+                    @Override
+                    public long run() throws IOException {
+                        return splitIngest(file);
+                    }
+                };
+            case "tokenizer-ingest":
+                return new Case() {
+                    @Override
+                    public long run() throws IOException {
+                        return tokenizerIngest(file);
+                    }
+                };
+            case "table-ingest":
+                return new Case() {
+                    @Override
+                    public long run() throws IOException {
+                        return tableIngest(file).getRowCount();
+                    }
+                };
+            case "hashmap-histogram":
+                return new Case() {
+                    @Override
+                    public long run() {
+                        Map<Integer, Integer> counts = new HashMap<>();
+                        for (int year : years) {
+                            if (year >= MIN_YEAR && year <= MAX_YEAR) {
+                                counts.put(year, counts.getOrDefault(year, 0) + 1);
+                            }
+                        }
+                        return counts.size();
+                    }
+                };
+            case "year-histogram":
+                return new Case() {
+                    @Override
+                    public long run() {
+                        YearHistogram counts = new YearHistogram(MIN_YEAR, MAX_YEAR);
+                        for (int year : years) {
+                            if (year >= MIN_YEAR && year <= MAX_YEAR) {
+                                counts.increment(year);
+                            }
+                        }
+                        return counts.total();
+                    }
+                };
+            case "aggregate":
+                return new Case() {
+                    @Override
+                    public long run() {
+                        return EarningsAggregate.of(table, MIN_YEAR, MAX_YEAR).getRowsAccepted();
+                    }
+                };
+            case "export":
+                // Per-game view: one output line per distinct game name
+                return new Case() {
+                    @Override
+                    public long run() throws IOException {
+                        CountingChannel channel = new CountingChannel();
+                        EarningsExporter.writeView(channel, EarningsExporter.Format.CSV, aggregate,
+                                EarningsAggregate.GroupBy.GAME_NAME, EarningsAggregate.Function.SUM,
+                                EarningsAggregate.Measure.TOTAL_MONEY);
+                        return channel.count;
+                    }
+                };
+            case "paint":
+                return paintCase(aggregate);
+            default:
+                throw new IllegalStateException(name);
+        }
+    }
+
+    // Renders the default release year chart into an offscreen image
+    private static Case paintCase(EarningsAggregate aggregate) {
+        Map<String, Double> view = aggregate.view(EarningsAggregate.GroupBy.RELEASE_YEAR,
+                EarningsAggregate.Function.COUNT, null);
+        double max = 0;
+        for (double value : view.values()) {
+            max = Math.max(max, value);
+        }
+        final CustomBarChart chart = new CustomBarChart();
+        chart.setSize(800, 600);
+        chart.setData(view, max);
+        // updateBars() sets the bars to their final heights without animating
+        chart.updateBars(view, max);
+        final BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+
+        return new Case() {
+            @Override
+            public long run() {
+                Graphics2D g = image.createGraphics();
+                try {
+                    chart.paint(g);
+                } finally {
+                    g.dispose();
+                }
+                return image.getRGB(400, 300);
+            }
+        };
+    }
+
+    private void measure(String name, long rows, Case benchmarkCase) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink += benchmarkCase.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink += benchmarkCase.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        double bestMillis = best / 1e6;
+        System.out.printf("%-18s %12d %12.3f %12.3f %14.0f%n", name, rows, bestMillis,
+                total / 1e6 / iterations, rows / (best / 1e9));
+    }
+
+    // The original processData() loop: readLine, split and a boxed map
+    private static long splitIngest(File file) throws IOException {
+        Map<Integer, Integer> releaseYearData = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CSV_CHARSET))) {
+            String line;
+            // Skip header line
+            reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+                if (columns.length > 8) {
+                    try {
+                        int releaseYear = Integer.parseInt(columns[8].trim());
+                        if (releaseYear >= MIN_YEAR && releaseYear <= MAX_YEAR) {
+                            releaseYearData.put(releaseYear, releaseYearData.getOrDefault(releaseYear, 0) + 1);
+                        }
+                    } catch (NumberFormatException e) {
+                        // Skip rows with non-numeric release years
+                    }
+                }
+            }
+        }
+        return releaseYearData.size();
+    }
+
+    // Year counts only, straight from the byte tokenizer
+    private static long tokenizerIngest(File file) throws IOException {
+        YearHistogram counts = new YearHistogram(MIN_YEAR, MAX_YEAR);
+        CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+        try {
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                int year = tokenizer.parseInt(EarningsAggregate.RELEASE_YEAR_COLUMN);
+                if (year >= MIN_YEAR && year <= MAX_YEAR) {
+                    counts.increment(year);
+                }
+            }
+        } finally {
+            tokenizer.close();
+        }
+        return counts.total();
+    }
+
+    // Full columnar parse, as the GUI does on a cache miss
+    private static EarningsTable tableIngest(File file) throws IOException {
+        EarningsTable table = new EarningsTable(CSV_CHARSET);
+        CsvTokenizer tokenizer = new CsvTokenizer(new FileInputStream(file), EarningsAggregate.FIELD_COUNT);
+        try {
+            tokenizer.nextRow();
+            while (tokenizer.nextRow()) {
+                table.append(tokenizer);
+            }
+        } finally {
+            tokenizer.close();
+        }
+        return table;
+    }
+
+    // Discards output but keeps the formatting and encoding work
+    private static class CountingChannel implements WritableByteChannel {
+        long count;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            count += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.*;
+import java.util.*;
+
+// Writes synthetic earnings CSVs with the ESport_Earnings.csv layout so the
+// benchmarks can run on anything from 10^3 to 10^8 rows. Names, genres and
+// countries are drawn from small vocabularies (with a share of quoted,
+// comma-containing countries, like the real export); the numbers are random
+// but deterministic for a given seed.
+//
+//   java SyntheticEarningsGenerator <rows> <output.csv> [seed]
+public class SyntheticEarningsGenerator {
+
+    private static final String[] GENRES = {
+        "Multiplayer Online Battle Arena", "First-Person Shooter", "Battle Royale", "Strategy",
+        "Collectible Card Game", "Sports", "Fighting Game", "Racing", "Role-Playing Game",
+        "Third-Person Shooter", "Puzzle Game"
+    };
+
+    private static final String[] COUNTRIES = {
+        "United States", "China", "Korea, Republic of", "Sweden", "Denmark", "France", "Germany",
+        "Finland", "Russian Federation", "Brazil", "Japan", "Taiwan, Republic of China", "Canada",
+        "United Kingdom", "Poland", "Viet Nam", "Thailand", "Australia"
+    };
+
+    private static final int DISTINCT_GAMES = 5000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java SyntheticEarningsGenerator <rows> <output.csv> [seed]");
+            System.exit(2);
+        }
+        long rows = Long.parseLong(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        generate(new File(args[1]), rows, seed);
+    }
+
+    public static void generate(File file, long rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"), 1 << 16);
+        try {
+            out.write("IdNo,TotalMoney,GameName,Genre,PlayerNo,TournamentNo,Top_Country,Top_Country_Earnings,Releaseyear\n");
+            StringBuilder line = new StringBuilder(128);
+            for (long i = 0; i < rows; i++) {
+                int game = random.nextInt(DISTINCT_GAMES);
+                String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+                double total = random.nextInt(100000000) / 100.0;
+
+                line.setLength(0);
+                line.append(i + 1).append(',');
+                appendMoney(line, total).append(',');
+                line.append("Game ").append(game).append(',');
+                line.append(GENRES[game % GENRES.length]).append(',');
+                line.append(1 + random.nextInt(2000)).append(',');
+                line.append(1 + random.nextInt(600)).append(',');
+                if (country.indexOf(',') >= 0) {
+                    line.append('"').append(country).append('"');
+                } else {
+                    line.append(country);
+                }
+                line.append(',');
+                appendMoney(line, total * random.nextDouble()).append(',');
+                // A few rows fall outside 1993-2020 like in the real data
+                line.append(1990 + random.nextInt(32)).append('\n');
+                out.append(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static StringBuilder appendMoney(StringBuilder line, double value) {
+        long cents = Math.round(value * 100);
+        line.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            line.append('0');
+        }
+        return line.append(fraction);
+    }
+}
@@ -0,0 +1,80 @@
+package esports.jmh;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH front end for the cases of bench/EarningsBenchmark. JMH does not
+// accept benchmarks in the default package, where the rest of the code
+// lives, so this class only looks the case up by name through
+// EarningsBenchmark.prepare and times it; both harnesses measure the same work.
+//
+//   mvn -P jmh package
+//   java -jar target/benchmarks.jar -p benchmarkCase=table-ingest -p rows=1000000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EarningsJmhBenchmark {
+
+    @Param({"split-ingest", "tokenizer-ingest", "table-ingest", "hashmap-histogram",
+            "year-histogram", "aggregate", "export", "paint"})
+    public String benchmarkCase;
+
+    // Synthetic rows to generate, ignored when file is set
+    @Param({"100000"})
+    public long rows;
+
+    // An existing CSV to benchmark instead of synthetic data
+    @Param({""})
+    public String file;
+
+    private File input;
+    private boolean generated;
+    private Callable<Long> task;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        if (file.isEmpty()) {
+            input = File.createTempFile("earnings-" + rows + "-", ".csv");
+            generated = true;
+            Class.forName("SyntheticEarningsGenerator")
+                    .getMethod("generate", File.class, long.class, long.class)
+                    .invoke(null, input, rows, 42L);
+        } else {
+            input = new File(file);
+        }
+        task = (Callable<Long>) Class.forName("EarningsBenchmark")
+                .getMethod("prepare", String.class, File.class)
+                .invoke(null, benchmarkCase, input);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (generated) {
+            input.delete();
+        }
+    }
+
+    @Benchmark
+    public long run() throws Exception {
+        return task.call();
+    }
+}